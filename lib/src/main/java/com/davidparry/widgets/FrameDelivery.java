@@ -0,0 +1,131 @@
+package com.davidparry.widgets;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+final class FrameDelivery implements Runnable {
+    private static FrameDelivery instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+    // view -> what it gets on the next frame, a view is only updated once per frame
+    private Map<ThreadLoadingImageView, Delivery> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+    // created after the version check, FrameCallback is not there to load below Jelly Bean
+    private Object frameCallback;
+
+    private FrameDelivery() {
+    }
+
+    static synchronized FrameDelivery getInstance() {
+        if (instance == null) {
+            instance = new FrameDelivery();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the view to show what is cached under the id on the next frame, callable from any thread
+     *
+     * @param cacheId - the id the view asked for, it is skipped if it has moved on to another one by then
+     * @param preview - true for the progressive preview, a full image queued for the same frame wins over it
+     */
+    void deliver(ThreadLoadingImageView view, String cacheId, boolean preview) {
+        if (cacheId == null) {
+            return;
+        }
+        boolean schedule;
+        synchronized (lock) {
+            Delivery queued = pending.get(view);
+            if (preview && queued != null && !queued.preview && queued.cacheId.equals(cacheId)) {
+                return;
+            }
+            pending.put(view, new Delivery(cacheId, preview));
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            mainHandler.post(this);
+        }
+    }
+
+    /**
+     * On the main thread, waits for the next frame where there is a Choreographer to wait on
+     */
+    @Override
+    public void run() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            doFrame();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (frameCallback == null) {
+            frameCallback = new FrameCallback(this);
+        }
+        Choreographer.getInstance().postFrameCallback((FrameCallback) frameCallback);
+    }
+
+    /**
+     * Applies every completion that arrived since the last frame in one pass
+     */
+    void doFrame() {
+        Map<ThreadLoadingImageView, Delivery> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        for (Map.Entry<ThreadLoadingImageView, Delivery> entry : batch.entrySet()) {
+            entry.getKey().deliver(entry.getValue().cacheId, entry.getValue().preview);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameCallback implements Choreographer.FrameCallback {
+        private final FrameDelivery delivery;
+
+        FrameCallback(FrameDelivery delivery) {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            delivery.doFrame();
+        }
+    }
+
+    private static class Delivery {
+        private final String cacheId;
+        private final boolean preview;
+
+        Delivery(String cacheId, boolean preview) {
+            this.cacheId = cacheId;
+            this.preview = preview;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.CacheHeaders;
+import com.davidparry.widgets.util.HttpStatusException;
+import com.davidparry.widgets.util.Streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class HttpTransport implements ImageTransport {
+    // error and 304 bodies up to this size are read off so the connection stays alive
+    private static final int DRAIN_LIMIT = 64 * 1024;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public HttpTransport() {
+        this(30000, 30000);
+    }
+
+    /**
+     * Downloads over HttpURLConnection and its keep-alive pool, replace it with
+     * {@link ThreadLoadingImageView#setTransport(String, ImageTransport)} for another client
+     *
+     * @param connectTimeout - in milliseconds
+     * @param readTimeout    - in milliseconds
+     */
+    public HttpTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public Response open(String url, CacheHeaders validators) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        // a connection is only handed back to the keep-alive pool once its body was read to the end
+        boolean opened = false;
+        try {
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setInstanceFollowRedirects(true);
+            if (validators != null) {
+                validators.applyValidators(connection);
+            }
+            connection.connect();
+            long now = System.currentTimeMillis();
+            int code = connection.getResponseCode();
+            if (validators != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (Streams.drain(connection.getInputStream(), DRAIN_LIMIT)) {
+                    opened = true;
+                }
+                return Response.notModified(validators.revalidated(connection, now));
+            }
+            if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                if (Streams.drain(connection.getErrorStream(), DRAIN_LIMIT)) {
+                    opened = true;
+                }
+                throw new HttpStatusException(code, "HTTP " + code + " loading " + url);
+            }
+            InputStream body = connection.getInputStream();
+            Response response = new ConnectionResponse(connection, body, connection.getContentLength(),
+                    connection.getContentType(), CacheHeaders.fromResponse(connection, now));
+            opened = true;
+            return response;
+        } finally {
+            if (!opened) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static class ConnectionResponse extends Response {
+        private final HttpURLConnection connection;
+
+        ConnectionResponse(HttpURLConnection connection, InputStream body, int contentLength, String contentType,
+                           CacheHeaders headers) {
+            super(false, headers, contentType, contentLength, body, null);
+            this.connection = connection;
+        }
+
+        @Override
+        public void close(boolean complete) {
+            super.close(complete);
+            if (!complete) {
+                // a body left unread would stall the next request on the connection
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.davidparry.widgets;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import com.davidparry.widgets.util.BitmapPool;
+import com.davidparry.widgets.util.EncodedMemoryCache;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.TileCache;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ImageCacheTrimmer implements ComponentCallbacks2 {
+    private final ImageCache cache;
+    private final EncodedMemoryCache encodedCache;
+    private final TileCache tileCache;
+    private float fraction = 1f;
+
+    public ImageCacheTrimmer(ImageCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * @param encodedCache - trimmed by the same share as the decoded cache, may be null
+     */
+    public ImageCacheTrimmer(ImageCache cache, EncodedMemoryCache encodedCache) {
+        this(cache, encodedCache, null);
+    }
+
+    /**
+     * @param tileCache - tiles of tiled images, trimmed by the same share, may be null
+     */
+    public ImageCacheTrimmer(ImageCache cache, EncodedMemoryCache encodedCache, TileCache tileCache) {
+        this.cache = cache;
+        this.encodedCache = encodedCache;
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Share of the memory cache budget kept for a trim level, the further down the lru list the system
+     * is about to kill from the less is kept
+     */
+    public static float fractionFor(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return 0f;
+        }
+        if (level >= TRIM_MEMORY_MODERATE) {
+            return 0.1f;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 0.25f;
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return 0.5f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1f;
+    }
+
+    /**
+     * Each level sets the share it calls for, a milder level after a harsher one gives the difference back
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        trim(fractionFor(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0f);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * The app is showing images again, gives back the budget taken by the last trim whether it came while in
+     * the background or while running, a trim is only ever meant to last until the pressure passes
+     */
+    public void onForeground() {
+        trim(1f);
+    }
+
+    public synchronized float getFraction() {
+        return fraction;
+    }
+
+    /**
+     * Evicted bitmaps go to the pool, which holds back the ones still on screen
+     */
+    private void trim(float to) {
+        synchronized (this) {
+            if (to == fraction) {
+                return;
+            }
+            fraction = to;
+        }
+        trimTiers(to);
+    }
+
+    /**
+     * Every tier gets the same share of its budget and keeps it for later puts, until a milder level or
+     * {@link #onForeground()}
+     */
+    private void trimTiers(float to) {
+        cache.trimToFraction(to);
+        BitmapPool pool = cache.getBitmapPool();
+        if (pool != null) {
+            pool.trimToFraction(to);
+        }
+        if (encodedCache != null) {
+            encodedCache.trimToFraction(to);
+        }
+        if (tileCache != null) {
+            tileCache.trimToFraction(to);
+        }
+    }
+}
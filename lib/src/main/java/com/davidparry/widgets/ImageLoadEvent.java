@@ -0,0 +1,134 @@
+package com.davidparry.widgets;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ImageLoadEvent {
+
+    public enum Tier {
+        MEMORY, VARIANT, ENCODED, DISK, REVALIDATED, NETWORK, LOCAL
+    }
+
+    public enum Outcome {
+        SUCCESS, FAILED, CANCELLED
+    }
+
+    private final String url;
+    private final String cacheId;
+    private final Tier tier;
+    private final Outcome outcome;
+    private final long queuedNanos;
+    private final long connectNanos;
+    private final long downloadNanos;
+    private final long decodeNanos;
+    private final long totalNanos;
+    private final long bytes;
+    private final Throwable error;
+
+    /**
+     * @param tier  - where the bytes came from, null when the load ended before finding them
+     * @param bytes - encoded bytes read from disk or the network
+     * @param error - why the load failed, null otherwise
+     */
+    public ImageLoadEvent(String url, String cacheId, Tier tier, Outcome outcome, long queuedNanos,
+                          long connectNanos, long downloadNanos, long decodeNanos, long totalNanos, long bytes,
+                          Throwable error) {
+        this.url = url;
+        this.cacheId = cacheId;
+        this.tier = tier;
+        this.outcome = outcome;
+        this.queuedNanos = queuedNanos;
+        this.connectNanos = connectNanos;
+        this.downloadNanos = downloadNanos;
+        this.decodeNanos = decodeNanos;
+        this.totalNanos = totalNanos;
+        this.bytes = bytes;
+        this.error = error;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return time waiting in the executor before a thread picked the load up
+     */
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    /**
+     * @return time from opening the connection until the response headers arrived, 0 without a request
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return time reading the body, 0 without a request
+     */
+    public long getDownloadNanos() {
+        return downloadNanos;
+    }
+
+    /**
+     * @return time decoding or scaling into the memory cache
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return time from the load being queued until it finished
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageLoadEvent{" +
+                "cacheId='" + cacheId + '\'' +
+                ", tier=" + tier +
+                ", outcome=" + outcome +
+                ", queuedNanos=" + queuedNanos +
+                ", connectNanos=" + connectNanos +
+                ", downloadNanos=" + downloadNanos +
+                ", decodeNanos=" + decodeNanos +
+                ", totalNanos=" + totalNanos +
+                ", bytes=" + bytes +
+                '}';
+    }
+}
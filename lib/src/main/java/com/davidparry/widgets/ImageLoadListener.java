@@ -0,0 +1,32 @@
+package com.davidparry.widgets;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public interface ImageLoadListener {
+    /**
+     * called on the loader thread when a load finished, failed or was cancelled
+     */
+    void onLoadFinished(ImageLoadEvent event);
+
+    /**
+     * called on the ui thread when a view put its image on screen
+     *
+     * @param tier                  - where the image came from, MEMORY when it was already decoded
+     * @param requestToDisplayNanos - from the view asking for the image until it was set
+     * @param deliverNanos          - from the image reaching the memory cache until it was set, 0 for a memory hit
+     */
+    void onDisplayed(String cacheId, ImageLoadEvent.Tier tier, long requestToDisplayNanos, long deliverNanos);
+}
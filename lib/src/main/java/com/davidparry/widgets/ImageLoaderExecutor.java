@@ -0,0 +1,338 @@
+package com.davidparry.widgets;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ImageLoaderExecutor extends ThreadPoolExecutor {
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+    private final AtomicInteger cancelledQueued = new AtomicInteger();
+    private final AtomicInteger cancelledRunning = new AtomicInteger();
+    private final int threads;
+    private final Object dispatchLock = new Object();
+    // host -> loads waiting on a slot for it, only hosts with waiting or running loads are kept
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Map<String, Integer> hostLimits = new HashMap<>();
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private int dispatched;
+    private long served;
+
+    public ImageLoaderExecutor(int threads) {
+        super(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(64, new LoadOrder()), new LoaderThreadFactory());
+        this.threads = threads;
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Image loads wait per host and are handed to the pool only while their host is under its limit,
+     * anything else runs as a plain pool task
+     */
+    @Override
+    public void execute(Runnable command) {
+        String host = hostOf(command);
+        if (host == null) {
+            super.execute(command);
+            return;
+        }
+        synchronized (dispatchLock) {
+            Host waiting = hosts.get(host);
+            if (waiting == null) {
+                waiting = new Host(host);
+                hosts.put(host, waiting);
+            }
+            waiting.queue.add(command);
+        }
+        dispatch();
+    }
+
+    /**
+     * Limit for every host without its own, a burst to one cdn then reuses a few kept alive connections
+     * instead of opening one per thread
+     */
+    public void setMaxRequestsPerHost(int max) {
+        synchronized (dispatchLock) {
+            maxRequestsPerHost = Math.max(1, max);
+        }
+        dispatch();
+    }
+
+    public void setMaxRequestsForHost(String host, int max) {
+        synchronized (dispatchLock) {
+            hostLimits.put(host, Math.max(1, max));
+        }
+        dispatch();
+    }
+
+    /**
+     * Drops the load from the queue when it has not started, a running load aborts itself
+     *
+     * @return true if the load never started
+     */
+    public boolean cancel(Runnable load) {
+        boolean removed = removeFromPool(load);
+        String host = hostOf(load);
+        if (!removed && host != null) {
+            synchronized (dispatchLock) {
+                Host waiting = hosts.get(host);
+                removed = waiting != null && waiting.queue.remove(load);
+            }
+        }
+        if (removed) {
+            cancelledQueued.incrementAndGet();
+            return true;
+        }
+        cancelledRunning.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * A load given a slot on its host waits in the pool queue wrapped in that slot until a thread takes it,
+     * the slot goes back to the host when it is removed there
+     */
+    private boolean removeFromPool(Runnable load) {
+        for (Runnable queued : getQueue()) {
+            if (unwrap(queued) != load) {
+                continue;
+            }
+            if (!getQueue().remove(queued)) {
+                // a thread took it meanwhile
+                return false;
+            }
+            if (queued instanceof HostSlot) {
+                finished(((HostSlot) queued).host);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves a waiting load to a new priority, a load already running only keeps the new value
+     */
+    public void reprioritize(ThreadLoadingImageView.ImageLoader load, int priority) {
+        synchronized (dispatchLock) {
+            Host waiting = hosts.get(load.getHost());
+            // the queue orders on insert, the load has to leave it while its priority changes
+            boolean queued = waiting != null && waiting.queue.remove(load);
+            load.setPriority(priority);
+            if (queued) {
+                waiting.queue.add(load);
+            }
+        }
+        dispatch();
+    }
+
+    public int getQueueDepth() {
+        int depth = getQueue().size();
+        synchronized (dispatchLock) {
+            for (Host host : hosts.values()) {
+                depth += host.queue.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Fills free threads with the best waiting load of any host under its limit. Priority decides first,
+     * between equal priorities the host served longest ago goes next so one busy host cannot starve the rest.
+     */
+    private void dispatch() {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (dispatchLock) {
+            while (dispatched < threads) {
+                Host next = null;
+                for (Host host : hosts.values()) {
+                    if (host.queue.isEmpty() || host.running >= limitFor(host.name)) {
+                        continue;
+                    }
+                    if (next == null || host.isBefore(next)) {
+                        next = host;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.running++;
+                next.lastServed = ++served;
+                dispatched++;
+                ready.add(new HostSlot(next, next.queue.poll()));
+            }
+        }
+        for (Runnable runnable : ready) {
+            super.execute(runnable);
+        }
+    }
+
+    private void finished(Host host) {
+        synchronized (dispatchLock) {
+            host.running--;
+            dispatched--;
+            if (host.running == 0 && host.queue.isEmpty()) {
+                hosts.remove(host.name);
+            }
+        }
+        dispatch();
+    }
+
+    private int limitFor(String host) {
+        Integer limit = hostLimits.get(host);
+        return limit != null ? limit : maxRequestsPerHost;
+    }
+
+    private static Runnable unwrap(Runnable runnable) {
+        return runnable instanceof HostSlot ? ((HostSlot) runnable).load : runnable;
+    }
+
+    private static String hostOf(Runnable runnable) {
+        if (runnable instanceof ThreadLoadingImageView.ImageLoader) {
+            return ((ThreadLoadingImageView.ImageLoader) runnable).getHost();
+        }
+        return null;
+    }
+
+    /**
+     * @return loads removed from the queue before they started
+     */
+    public int getCancelledQueuedCount() {
+        return cancelledQueued.get();
+    }
+
+    /**
+     * @return loads aborted while they were downloading or decoding
+     */
+    public int getCancelledRunningCount() {
+        return cancelledRunning.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageLoaderExecutor{" +
+                "queueDepth=" + getQueueDepth() +
+                ", active=" + getActiveCount() +
+                ", completed=" + getCompletedTaskCount() +
+                ", cancelledQueued=" + cancelledQueued.get() +
+                ", cancelledRunning=" + cancelledRunning.get() +
+                '}';
+    }
+
+    private static class Host {
+        private final String name;
+        private final PriorityQueue<Runnable> queue = new PriorityQueue<>(16, new LoadOrder());
+        private int running;
+        private long lastServed;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        boolean isBefore(Host other) {
+            int priority = LoadOrder.priority(queue.peek());
+            int otherPriority = LoadOrder.priority(other.queue.peek());
+            if (priority != otherPriority) {
+                return priority > otherPriority;
+            }
+            return lastServed < other.lastServed;
+        }
+    }
+
+    /**
+     * Runs a load that got a slot on its host and gives the slot back when done
+     */
+    private class HostSlot implements Runnable {
+        private final Host host;
+        private final Runnable load;
+
+        HostSlot(Host host, Runnable load) {
+            this.host = host;
+            this.load = load;
+        }
+
+        @Override
+        public void run() {
+            try {
+                load.run();
+            } finally {
+                finished(host);
+            }
+        }
+    }
+
+    /**
+     * Higher priority first and the newest request first within a priority, during a fling the rows
+     * that just scrolled in are the ones the user is looking at
+     */
+    static class LoadOrder implements Comparator<Runnable> {
+        @Override
+        public int compare(Runnable lhs, Runnable rhs) {
+            int lhsPriority = priority(lhs);
+            int rhsPriority = priority(rhs);
+            if (lhsPriority != rhsPriority) {
+                return lhsPriority > rhsPriority ? -1 : 1;
+            }
+            long lhsSequence = sequence(lhs);
+            long rhsSequence = sequence(rhs);
+            if (lhsSequence == rhsSequence) {
+                return 0;
+            }
+            return lhsSequence > rhsSequence ? -1 : 1;
+        }
+
+        static int priority(Runnable runnable) {
+            Runnable load = unwrap(runnable);
+            if (load instanceof ThreadLoadingImageView.ImageLoader) {
+                return ((ThreadLoadingImageView.ImageLoader) load).getPriority();
+            }
+            return ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL;
+        }
+
+        static long sequence(Runnable runnable) {
+            Runnable load = unwrap(runnable);
+            if (load instanceof ThreadLoadingImageView.ImageLoader) {
+                return ((ThreadLoadingImageView.ImageLoader) load).getSequence();
+            }
+            return 0;
+        }
+    }
+
+    static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // keep image work from competing with the ui thread
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ImageLoader-" + count.incrementAndGet());
+        }
+    }
+}
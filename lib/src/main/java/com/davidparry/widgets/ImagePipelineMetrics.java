@@ -0,0 +1,201 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ImagePipelineMetrics implements ImageLoadListener {
+    private final AtomicLongArray tierCounts = new AtomicLongArray(ImageLoadEvent.Tier.values().length);
+    private final AtomicLongArray outcomeCounts = new AtomicLongArray(ImageLoadEvent.Outcome.values().length);
+    private final AtomicLong bytes = new AtomicLong();
+    private final LatencyHistogram queued = new LatencyHistogram();
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram download = new LatencyHistogram();
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram load = new LatencyHistogram();
+    private final LatencyHistogram deliver = new LatencyHistogram();
+    private final LatencyHistogram timeToDisplay = new LatencyHistogram();
+
+    @Override
+    public void onLoadFinished(ImageLoadEvent event) {
+        outcomeCounts.incrementAndGet(event.getOutcome().ordinal());
+        bytes.addAndGet(event.getBytes());
+        queued.record(event.getQueuedNanos());
+        if (event.getOutcome() != ImageLoadEvent.Outcome.SUCCESS) {
+            return;
+        }
+        tierCounts.incrementAndGet(event.getTier().ordinal());
+        if (event.getConnectNanos() > 0) {
+            connect.record(event.getConnectNanos());
+            download.record(event.getDownloadNanos());
+        }
+        decode.record(event.getDecodeNanos());
+        load.record(event.getTotalNanos());
+    }
+
+    @Override
+    public void onDisplayed(String cacheId, ImageLoadEvent.Tier tier, long requestToDisplayNanos,
+                            long deliverNanos) {
+        if (tier == ImageLoadEvent.Tier.MEMORY) {
+            tierCounts.incrementAndGet(tier.ordinal());
+        } else {
+            deliver.record(deliverNanos);
+        }
+        timeToDisplay.record(requestToDisplayNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] tiers = new long[tierCounts.length()];
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = tierCounts.get(i);
+        }
+        long[] outcomes = new long[outcomeCounts.length()];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = outcomeCounts.get(i);
+        }
+        return new Snapshot(tiers, outcomes, bytes.get(), queued.snapshot(), connect.snapshot(),
+                download.snapshot(), decode.snapshot(), load.snapshot(), deliver.snapshot(),
+                timeToDisplay.snapshot());
+    }
+
+    public void reset() {
+        for (int i = 0; i < tierCounts.length(); i++) {
+            tierCounts.set(i, 0);
+        }
+        for (int i = 0; i < outcomeCounts.length(); i++) {
+            outcomeCounts.set(i, 0);
+        }
+        bytes.set(0);
+        queued.reset();
+        connect.reset();
+        download.reset();
+        decode.reset();
+        load.reset();
+        deliver.reset();
+        timeToDisplay.reset();
+    }
+
+    /**
+     * Counters and histograms as they were when the snapshot was taken
+     */
+    public static class Snapshot {
+        private final long[] tiers;
+        private final long[] outcomes;
+        private final long bytes;
+        private final LatencyHistogram.Snapshot queued;
+        private final LatencyHistogram.Snapshot connect;
+        private final LatencyHistogram.Snapshot download;
+        private final LatencyHistogram.Snapshot decode;
+        private final LatencyHistogram.Snapshot load;
+        private final LatencyHistogram.Snapshot deliver;
+        private final LatencyHistogram.Snapshot timeToDisplay;
+
+        Snapshot(long[] tiers, long[] outcomes, long bytes, LatencyHistogram.Snapshot queued,
+                 LatencyHistogram.Snapshot connect, LatencyHistogram.Snapshot download,
+                 LatencyHistogram.Snapshot decode, LatencyHistogram.Snapshot load,
+                 LatencyHistogram.Snapshot deliver, LatencyHistogram.Snapshot timeToDisplay) {
+            this.tiers = tiers;
+            this.outcomes = outcomes;
+            this.bytes = bytes;
+            this.queued = queued;
+            this.connect = connect;
+            this.download = download;
+            this.decode = decode;
+            this.load = load;
+            this.deliver = deliver;
+            this.timeToDisplay = timeToDisplay;
+        }
+
+        /**
+         * @return images served from the tier, memory counts views that found the image already decoded
+         */
+        public long getTierCount(ImageLoadEvent.Tier tier) {
+            return tiers[tier.ordinal()];
+        }
+
+        public long getOutcomeCount(ImageLoadEvent.Outcome outcome) {
+            return outcomes[outcome.ordinal()];
+        }
+
+        /**
+         * @return share of images served without reading disk or the network, 0 before any
+         */
+        public double getMemoryHitRate() {
+            long total = 0;
+            for (long count : tiers) {
+                total += count;
+            }
+            long hits = tiers[ImageLoadEvent.Tier.MEMORY.ordinal()] + tiers[ImageLoadEvent.Tier.VARIANT.ordinal()]
+                    + tiers[ImageLoadEvent.Tier.ENCODED.ordinal()];
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public LatencyHistogram.Snapshot getQueued() {
+            return queued;
+        }
+
+        public LatencyHistogram.Snapshot getConnect() {
+            return connect;
+        }
+
+        public LatencyHistogram.Snapshot getDownload() {
+            return download;
+        }
+
+        public LatencyHistogram.Snapshot getDecode() {
+            return decode;
+        }
+
+        public LatencyHistogram.Snapshot getLoad() {
+            return load;
+        }
+
+        public LatencyHistogram.Snapshot getDeliver() {
+            return deliver;
+        }
+
+        public LatencyHistogram.Snapshot getTimeToDisplay() {
+            return timeToDisplay;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder("ImagePipelineMetrics{");
+            for (ImageLoadEvent.Tier tier : ImageLoadEvent.Tier.values()) {
+                out.append(tier).append('=').append(getTierCount(tier)).append(", ");
+            }
+            for (ImageLoadEvent.Outcome outcome : ImageLoadEvent.Outcome.values()) {
+                out.append(outcome).append('=').append(getOutcomeCount(outcome)).append(", ");
+            }
+            return out.append("bytes=").append(bytes)
+                    .append("\n  queued ").append(queued)
+                    .append("\n  connect ").append(connect)
+                    .append("\n  download ").append(download)
+                    .append("\n  decode ").append(decode)
+                    .append("\n  load ").append(load)
+                    .append("\n  deliver ").append(deliver)
+                    .append("\n  timeToDisplay ").append(timeToDisplay)
+                    .append('}').toString();
+        }
+    }
+}
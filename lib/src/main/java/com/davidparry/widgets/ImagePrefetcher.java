@@ -0,0 +1,185 @@
+package com.davidparry.widgets;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ImagePrefetcher {
+    private final ImageCache cache;
+    private final ImageStore diskCache;
+
+    /**
+     * Prefetches into the caches {@link ThreadLoadingImageView} reads from
+     */
+    public ImagePrefetcher(Context context) {
+        ThreadLoadingImageView.ensureCaches(context);
+        this.cache = ThreadLoadingImageView.sharedCache();
+        this.diskCache = ThreadLoadingImageView.sharedDiskCache();
+    }
+
+    public ImagePrefetcher(ImageCache cache, ImageStore diskCache) {
+        this.cache = cache;
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Downloads the urls into the disk tier only, any size can be decoded from there later. Views with a
+     * {@link UrlResolver} download sized renditions instead, prefetch for them with a size.
+     */
+    public Group prefetch(List<String> urls) {
+        Group group = new Group();
+        for (String url : urls) {
+            group.add(new PrefetchLoad(url, 0, 0, null, diskCache));
+        }
+        return group;
+    }
+
+    /**
+     * Downloads the urls and decodes them into the memory tier at the size the rows will ask for, pass the
+     * view's size without padding so the cache ids match
+     */
+    public Group prefetch(List<String> urls, int width, int height) {
+        Group group = new Group();
+        for (String url : urls) {
+            PrefetchLoad load = new PrefetchLoad(url, width, height, cache, diskCache);
+            if (cache == null || cache.get(load.getCacheId()) == null) {
+                group.add(load);
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Loads started by one prefetch call, they run below anything a view asks for
+     */
+    public static class Group {
+        private final List<ThreadLoadingImageView.ImageLoader> loads = new ArrayList<>();
+        private boolean cancelled;
+
+        private synchronized void add(PrefetchLoad load) {
+            ThreadLoadingImageView.ImageLoader loader = ThreadLoadingImageView.submit(load,
+                    ThreadLoadingImageView.ImageLoader.PRIORITY_LOW);
+            if (loader != null) {
+                loads.add(loader);
+            }
+        }
+
+        /**
+         * Drops every load of the group that no view is waiting on, a view bound to the same image keeps its load
+         */
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (ThreadLoadingImageView.ImageLoader loader : loads) {
+                loader.release();
+            }
+            loads.clear();
+        }
+
+        /**
+         * @return loads of the group still queued or running
+         */
+        public synchronized int getPendingCount() {
+            int pending = 0;
+            for (ThreadLoadingImageView.ImageLoader loader : loads) {
+                if (loader.isActive()) {
+                    pending++;
+                }
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * A load without a view, nothing is displayed and no listener is registered
+     */
+    private static class PrefetchLoad implements LoadRequest {
+        private final String url;
+        private final int width;
+        private final int height;
+        private final ImageCache cache;
+        private final ImageStore diskCache;
+
+        PrefetchLoad(String url, int width, int height, ImageCache cache, ImageStore diskCache) {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.cache = cache;
+            this.diskCache = diskCache;
+        }
+
+        @Override
+        public String getCacheId() {
+            // a disk only load is keyed by the url alone so it never joins a decode for some view size
+            if (cache == null) {
+                return url;
+            }
+            return ThreadLoadingImageView.cacheIdFor(url, width, height);
+        }
+
+        @Override
+        public String getImageUrl() {
+            return url;
+        }
+
+        @Override
+        public String getRequestUrl() {
+            // the disk tier only prefetch keeps the original, any size can be decoded from it
+            if (cache == null) {
+                return url;
+            }
+            return ThreadLoadingImageView.requestUrlFor(url, width, height, ThreadLoadingImageView.getDefaultUrlResolver());
+        }
+
+        @Override
+        public int getTargetWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return height;
+        }
+
+        @Override
+        public Bitmap.Config getOpaqueConfig() {
+            return ThreadLoadingImageView.getDefaultOpaqueConfig();
+        }
+
+        @Override
+        public boolean isTiled() {
+            return false;
+        }
+
+        @Override
+        public ImageCache getCache() {
+            return cache;
+        }
+
+        @Override
+        public ImageStore getDiskCache() {
+            return diskCache;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.CacheHeaders;
+import com.davidparry.widgets.util.Streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public interface ImageTransport {
+
+    /**
+     * @return true when the images are on the device, they are decoded where they lie and never copied into
+     * the disk or encoded tiers
+     */
+    boolean isLocal();
+
+    /**
+     * Opens the image, called on a loader thread
+     *
+     * @param validators - sent for a conditional request when the transport supports one, null otherwise
+     * @return the response, the caller reads its body and closes it
+     * @throws IOException a {@link com.davidparry.widgets.util.HttpStatusException} for an error status, so the
+     *                     negative cache can tell a 404 from a 503
+     */
+    Response open(String url, CacheHeaders validators) throws IOException;
+
+    class Response {
+        private final boolean notModified;
+        private final CacheHeaders headers;
+        private final String contentType;
+        private final int contentLength;
+        private final InputStream body;
+        private final ByteBuffer data;
+
+        protected Response(boolean notModified, CacheHeaders headers, String contentType, int contentLength,
+                           InputStream body, ByteBuffer data) {
+            this.notModified = notModified;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.body = body;
+            this.data = data;
+        }
+
+        /**
+         * A body to read, as a download is
+         *
+         * @param contentLength - -1 when unknown
+         * @param headers       - freshness and validators, null when there are none to keep
+         */
+        public static Response forBody(InputStream body, int contentLength, String contentType, CacheHeaders headers) {
+            return new Response(false, headers, contentType, contentLength, body, null);
+        }
+
+        /**
+         * The whole image already in memory or mapped from a file, decoded without a copy
+         */
+        public static Response forData(ByteBuffer data, String contentType) {
+            return new Response(false, null, contentType, data.remaining(), null, data);
+        }
+
+        /**
+         * @param headers - the stored validators with the freshness of the 304
+         */
+        public static Response notModified(CacheHeaders headers) {
+            return new Response(true, headers, null, 0, null, null);
+        }
+
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        public CacheHeaders getHeaders() {
+            return headers;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public int getContentLength() {
+            return contentLength;
+        }
+
+        /**
+         * @return the body to read, null for a 304 or when there is {@link #getData()}
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        /**
+         * Releases the response, called once whether or not the body was used
+         *
+         * @param complete - the body was read to the end, an http connection can then be kept alive
+         */
+        public void close(boolean complete) {
+            Streams.closeQuietly(body);
+        }
+    }
+}
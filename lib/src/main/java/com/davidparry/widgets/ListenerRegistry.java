@@ -0,0 +1,148 @@
+package com.davidparry.widgets;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ListenerRegistry {
+    private final Object lock = new Object();
+    // cache id -> listeners waiting for it
+    private final Map<String, List<ListenerRef>> byId = new HashMap<>();
+    // listener -> the id it waits on, so a rebind drops the old registration without a scan
+    private final WeakHashMap<MemoryCache.Listener, String> idOf = new WeakHashMap<>();
+    private final ReferenceQueue<MemoryCache.Listener> collected = new ReferenceQueue<>();
+
+    /**
+     * Listens for the listener's current cache id, replacing whatever it was listening for before
+     */
+    public void register(MemoryCache.Listener listener) {
+        if (listener == null || listener.getCacheId() == null) {
+            return;
+        }
+        String id = listener.getCacheId();
+        synchronized (lock) {
+            purgeCollected();
+            removeListener(listener);
+            List<ListenerRef> refs = byId.get(id);
+            if (refs == null) {
+                refs = new ArrayList<>(2);
+                byId.put(id, refs);
+            }
+            refs.add(new ListenerRef(listener, id, collected));
+            idOf.put(listener, id);
+        }
+    }
+
+    public void unregister(MemoryCache.Listener listener) {
+        if (listener == null) {
+            return;
+        }
+        synchronized (lock) {
+            purgeCollected();
+            removeListener(listener);
+        }
+    }
+
+    /**
+     * Tells every listener waiting on the id it is loaded, each one is notified once and then dropped
+     */
+    public void notifyLoaded(String id) {
+        List<ListenerRef> refs;
+        synchronized (lock) {
+            refs = byId.remove(id);
+            if (refs == null) {
+                return;
+            }
+            for (ListenerRef ref : refs) {
+                MemoryCache.Listener listener = ref.get();
+                if (listener != null) {
+                    idOf.remove(listener);
+                }
+            }
+        }
+        // called outside the lock, a listener may register again from loaded()
+        for (ListenerRef ref : refs) {
+            MemoryCache.Listener listener = ref.get();
+            if (listener != null) {
+                listener.loaded();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            purgeCollected();
+            int size = 0;
+            for (List<ListenerRef> refs : byId.values()) {
+                size += refs.size();
+            }
+            return size;
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            byId.clear();
+            idOf.clear();
+        }
+    }
+
+    private void removeListener(MemoryCache.Listener listener) {
+        String id = idOf.remove(listener);
+        if (id == null) {
+            return;
+        }
+        List<ListenerRef> refs = byId.get(id);
+        if (refs == null) {
+            return;
+        }
+        Iterator<ListenerRef> it = refs.iterator();
+        while (it.hasNext()) {
+            if (it.next().get() == listener) {
+                it.remove();
+            }
+        }
+        if (refs.isEmpty()) {
+            byId.remove(id);
+        }
+    }
+
+    private void purgeCollected() {
+        ListenerRef ref;
+        while ((ref = (ListenerRef) collected.poll()) != null) {
+            List<ListenerRef> refs = byId.get(ref.id);
+            if (refs != null && refs.remove(ref) && refs.isEmpty()) {
+                byId.remove(ref.id);
+            }
+        }
+    }
+
+    private static class ListenerRef extends WeakReference<MemoryCache.Listener> {
+        private final String id;
+
+        ListenerRef(MemoryCache.Listener listener, String id, ReferenceQueue<MemoryCache.Listener> queue) {
+            super(listener, queue);
+            this.id = id;
+        }
+    }
+}
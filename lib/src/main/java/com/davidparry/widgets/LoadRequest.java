@@ -0,0 +1,65 @@
+package com.davidparry.widgets;
+
+import android.graphics.Bitmap;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public interface LoadRequest {
+
+    String getImageUrl();
+
+    /**
+     * @return url the bytes are downloaded from and kept on disk under, a sized rendition of the image url when
+     * a {@link UrlResolver} is in use, the image url otherwise
+     */
+    String getRequestUrl();
+
+    /**
+     * @return id the decoded image is cached under and loads of the same image are shared by, null to load
+     * without sharing
+     */
+    String getCacheId();
+
+    /**
+     * @return width in pixels the image is decoded down to, 0 for no limit
+     */
+    int getTargetWidth();
+
+    /**
+     * @return height in pixels the image is decoded down to, 0 for no limit
+     */
+    int getTargetHeight();
+
+    /**
+     * @return pixel format for images without transparency, RGB_565 halves their memory, null keeps ARGB_8888
+     */
+    Bitmap.Config getOpaqueConfig();
+
+    /**
+     * @return true to decode the image by region, a base layer for the target size and tiles of the visible
+     * part at the scale it is drawn at
+     */
+    boolean isTiled();
+
+    /**
+     * @return the memory tier to decode into, null to only warm the disk tier
+     */
+    ImageCache getCache();
+
+    ImageStore getDiskCache();
+}
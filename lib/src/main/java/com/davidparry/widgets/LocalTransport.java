@@ -0,0 +1,160 @@
+package com.davidparry.widgets;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.net.Uri;
+import com.davidparry.widgets.util.CacheHeaders;
+import com.davidparry.widgets.util.Streams;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class LocalTransport implements ImageTransport {
+    public static final String SCHEME_FILE = "file";
+    public static final String SCHEME_ASSET = "asset";
+    public static final String SCHEME_CONTENT = "content";
+    // the path prefix WebView and others use for assets in a file url
+    private static final String ANDROID_ASSET = "/android_asset/";
+    private final Context context;
+
+    /**
+     * Opens file, asset and content urls, each one is mapped from its file descriptor where it has one and
+     * streamed otherwise, a compressed asset or a content provider backed by a pipe
+     *
+     * @param context - for assets and content, may be null when only file urls are loaded
+     */
+    public LocalTransport(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public Response open(String url, CacheHeaders validators) throws IOException {
+        int colon = url.indexOf(':');
+        String scheme = colon > 0 ? url.substring(0, colon) : "";
+        if (SCHEME_CONTENT.equalsIgnoreCase(scheme)) {
+            return openContent(Uri.parse(url));
+        }
+        String path = pathOf(url.substring(colon + 1));
+        if (SCHEME_ASSET.equalsIgnoreCase(scheme)) {
+            // asset:///images/a.png and asset://images/a.png both name images/a.png
+            int start = 0;
+            while (start < path.length() && path.charAt(start) == '/') {
+                start++;
+            }
+            return openAsset(path.substring(start));
+        }
+        if (path.startsWith("//")) {
+            // file://host/path, the host of a local file url can only be this device
+            int slash = path.indexOf('/', 2);
+            path = slash > 0 ? path.substring(slash) : "/";
+        }
+        if (path.startsWith(ANDROID_ASSET)) {
+            return openAsset(path.substring(ANDROID_ASSET.length()));
+        }
+        FileInputStream input = new FileInputStream(path);
+        try {
+            return Response.forData(map(input, 0, input.getChannel().size()), null);
+        } finally {
+            Streams.closeQuietly(input);
+        }
+    }
+
+    /**
+     * What follows the scheme of a url without its query or fragment and with escapes decoded
+     */
+    static String pathOf(String rest) {
+        int end = rest.length();
+        int query = rest.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = rest.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return Uri.decode(rest.substring(0, end));
+    }
+
+    private Response openAsset(String path) throws IOException {
+        AssetManager assets = requireContext().getAssets();
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(path);
+        } catch (FileNotFoundException er) {
+            // compressed in the apk, there is no descriptor to map so it is inflated as a stream
+            InputStream input = assets.open(path, AssetManager.ACCESS_STREAMING);
+            return Response.forBody(input, -1, null, null);
+        }
+        return mapDescriptor(descriptor, null);
+    }
+
+    private Response openContent(Uri uri) throws IOException {
+        ContentResolver resolver = requireContext().getContentResolver();
+        String contentType = resolver.getType(uri);
+        AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("No descriptor for " + uri);
+        }
+        if (descriptor.getLength() < 0) {
+            // a pipe or a socket has no size, it is only readable front to back
+            return Response.forBody(descriptor.createInputStream(), -1, contentType, null);
+        }
+        return mapDescriptor(descriptor, contentType);
+    }
+
+    private static Response mapDescriptor(AssetFileDescriptor descriptor, String contentType) throws IOException {
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(descriptor.getFileDescriptor());
+            // an uncompressed asset is a slice of the apk, the descriptor is the apk's
+            return Response.forData(map(input, descriptor.getStartOffset(), descriptor.getLength()), contentType);
+        } finally {
+            Streams.closeQuietly(input);
+            Streams.closeQuietly(descriptor);
+        }
+    }
+
+    /**
+     * Maps the bytes read only, the mapping outlives the descriptor and its pages are decoded without a copy
+     * into the heap
+     */
+    private static ByteBuffer map(FileInputStream input, long offset, long length) throws IOException {
+        if (length <= 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Unable to map " + length + " bytes");
+        }
+        return input.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private Context requireContext() throws FileNotFoundException {
+        if (context == null) {
+            throw new FileNotFoundException("Assets and content need a context");
+        }
+        return context;
+    }
+}
@@ -1,14 +1,10 @@
 package com.davidparry.widgets;
 
 import android.graphics.drawable.Drawable;
+import com.davidparry.widgets.util.BitmapPool;
 import com.davidparry.widgets.util.ImageCache;
 import com.davidparry.widgets.util.ImageLruCache;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
  * Copyright 2015 David Parry
  * <p/>
@@ -26,19 +22,34 @@ import java.util.Map;
  */
 public class MemoryCache implements ImageCache {
 
-    private static Map<String, List<Listener>> listeners = new HashMap<>();
+    private final ListenerRegistry listeners = new ListenerRegistry();
     private ImageLruCache cache;
+    private BitmapPool pool;
 
     public MemoryCache(int size) {
+        this(size, null);
+    }
+
+    /**
+     * @param size - budget in kb
+     * @param pool - receives evicted bitmaps for reuse by later decodes, may be null
+     */
+    public MemoryCache(int size, BitmapPool pool) {
         if (size < 0) {
             size = 1024;
         }
-        cache = new ImageLruCache(size);
+        this.pool = pool;
+        cache = new ImageLruCache(size, pool);
     }
 
     @Override
     public void registerListener(Listener listener) {
-        addListener(listener);
+        listeners.register(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.unregister(listener);
     }
 
     @Override
@@ -47,38 +58,43 @@ public class MemoryCache implements ImageCache {
     }
 
     public void put(String id, Drawable bitmap) {
-        cache.put(id, bitmap);
+        cache.putVariant(id, bitmap);
         notifyListeners(id);
     }
 
-    private void notifyListeners(String id) {
-        List<Listener> list = listeners.get(id);
-        if (list != null) {
-            for (Listener ref : list) {
-                if (ref != null) {
-                    ref.loaded();
-                }
-            }
-        }
+    @Override
+    public void remove(String id) {
+        cache.remove(id);
     }
 
-    private void addListener(Listener listener) {
-        if (listener != null) {
-            List<Listener> items = listeners.get(listener.getCacheId());
-            if (items == null) {
-                listeners.put(listener.getCacheId(), new ArrayList<Listener>());
-                items = listeners.get(listener.getCacheId());
-            }
-            items.add(listener);
-            listeners.put(listener.getCacheId(), items);
-        }
+    @Override
+    public void notifyFailed(String id) {
+        notifyListeners(id);
     }
 
+    private void notifyListeners(String id) {
+        listeners.notifyLoaded(id);
+    }
 
     public void clear() {
         cache.evictAll();
     }
 
+    @Override
+    public BitmapPool getBitmapPool() {
+        return pool;
+    }
+
+    @Override
+    public void trimToFraction(float fraction) {
+        cache.setBudget((int) (cache.maxSize() * fraction));
+    }
+
+    @Override
+    public String findLargerVariant(String id) {
+        return cache.findLargerVariant(id);
+    }
+
     public interface Listener {
 
         void loaded();
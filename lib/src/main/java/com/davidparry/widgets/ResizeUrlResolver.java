@@ -0,0 +1,83 @@
+package com.davidparry.widgets;
+
+import java.util.Arrays;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ResizeUrlResolver implements UrlResolver {
+    public static final int[] DEFAULT_BUCKETS = {64, 128, 256, 512, 1024, 2048};
+
+    private final String widthParam;
+    private final String heightParam;
+    private final int[] buckets;
+
+    public ResizeUrlResolver(String widthParam, String heightParam) {
+        this(widthParam, heightParam, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Asks an image cdn for a rendition through width and height query parameters. Both sides are snapped up
+     * to the next bucket so views of slightly different sizes share a rendition in every cache on the way, the
+     * two together are a bounding box the cdn fits the image into with the ratio of the source.
+     *
+     * @param heightParam - null for a cdn that only takes a width and keeps the aspect ratio
+     * @param buckets     - rendition sizes in pixels, a side larger than all of them asks for the largest
+     */
+    public ResizeUrlResolver(String widthParam, String heightParam, int... buckets) {
+        if (buckets == null || buckets.length == 0) {
+            throw new IllegalArgumentException("At least one size bucket is needed");
+        }
+        this.widthParam = widthParam;
+        this.heightParam = heightParam;
+        this.buckets = buckets.clone();
+        Arrays.sort(this.buckets);
+    }
+
+    @Override
+    public String resolve(String url, int width, int height) {
+        if (url == null || (width <= 0 && height <= 0)) {
+            return url;
+        }
+        // the parameters go before a fragment, which is never sent
+        int hash = url.indexOf('#');
+        String base = hash >= 0 ? url.substring(0, hash) : url;
+        StringBuilder builder = new StringBuilder(url.length() + 24).append(base);
+        char separator = base.indexOf('?') >= 0 ? '&' : '?';
+        if (widthParam != null && width > 0) {
+            builder.append(separator).append(widthParam).append('=').append(snap(width));
+            separator = '&';
+        }
+        if (heightParam != null && height > 0) {
+            builder.append(separator).append(heightParam).append('=').append(snap(height));
+        }
+        if (hash >= 0) {
+            builder.append(url, hash, url.length());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the smallest bucket at least as large as the size, the largest bucket beyond that
+     */
+    public int snap(int size) {
+        for (int bucket : buckets) {
+            if (bucket >= size) {
+                return bucket;
+            }
+        }
+        return buckets[buckets.length - 1];
+    }
+}
@@ -0,0 +1,266 @@
+package com.davidparry.widgets;
+
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import com.davidparry.widgets.util.BitmapPool;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.TiledDrawable;
+import com.davidparry.widgets.util.VariantIndex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ShardedMemoryCache implements ImageCache {
+    private static final int DEFAULT_SHARDS = 8;
+    // what ImageLruCache charges for a drawable it cannot measure
+    private static final int UNKNOWN_BYTES = 200 * 1024;
+
+    private final ListenerRegistry listeners = new ListenerRegistry();
+    private final VariantIndex variants = new VariantIndex();
+    private final Shard[] shards;
+    private final int mask;
+    private final AtomicLong size = new AtomicLong();
+    private final BitmapPool pool;
+    private final long initialBytes;
+    private volatile long maxBytes;
+
+    public ShardedMemoryCache(int size) {
+        this(size, null);
+    }
+
+    public ShardedMemoryCache(int size, BitmapPool pool) {
+        this(size, pool, DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param size   - budget in kb shared by all shards, same unit as {@link MemoryCache}
+     * @param pool   - receives evicted bitmaps for reuse by later decodes, may be null
+     * @param shards - number of independently locked segments, rounded up to a power of two
+     */
+    public ShardedMemoryCache(int size, BitmapPool pool, int shards) {
+        if (size < 0) {
+            size = 1024;
+        }
+        int count = 1;
+        while (count < shards) {
+            count <<= 1;
+        }
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.mask = count - 1;
+        this.initialBytes = size * 1024L;
+        this.maxBytes = initialBytes;
+        this.pool = pool;
+    }
+
+    @Override
+    public Drawable get(String id) {
+        if (id == null) {
+            return null;
+        }
+        return shardFor(id).get(id);
+    }
+
+    @Override
+    public void put(String id, Drawable bitmap) {
+        if (id == null || bitmap == null) {
+            return;
+        }
+        int index = indexFor(id);
+        int bytes = sizeOf(bitmap);
+        variants.add(id);
+        Entry previous = shards[index].put(id, new Entry(id, bitmap, bytes));
+        size.addAndGet(previous == null ? bytes : bytes - previous.bytes);
+        if (previous != null && previous.drawable != bitmap) {
+            recycle(previous.drawable);
+        }
+        // the entry just put stays for its listeners even over a trimmed budget, the next put evicts it
+        trimToSize(maxBytes, index, id);
+        listeners.notifyLoaded(id);
+    }
+
+    @Override
+    public void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        Entry removed = shardFor(id).remove(id);
+        if (removed != null) {
+            variants.remove(id);
+            size.addAndGet(-removed.bytes);
+            recycle(removed.drawable);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Shard shard : shards) {
+            for (Entry entry : shard.removeAll()) {
+                variants.remove(entry.id);
+                size.addAndGet(-entry.bytes);
+                recycle(entry.drawable);
+            }
+        }
+    }
+
+    @Override
+    public void registerListener(MemoryCache.Listener listener) {
+        listeners.register(listener);
+    }
+
+    @Override
+    public void unregisterListener(MemoryCache.Listener listener) {
+        listeners.unregister(listener);
+    }
+
+    @Override
+    public void notifyFailed(String id) {
+        listeners.notifyLoaded(id);
+    }
+
+    @Override
+    public BitmapPool getBitmapPool() {
+        return pool;
+    }
+
+    @Override
+    public void trimToFraction(float fraction) {
+        maxBytes = (long) (initialBytes * Math.max(0f, Math.min(fraction, 1f)));
+        trimToSize(maxBytes, 0, null);
+    }
+
+    @Override
+    public String findLargerVariant(String id) {
+        return variants.findLarger(id);
+    }
+
+    /**
+     * @return bytes currently held across all shards
+     */
+    public long size() {
+        return size.get();
+    }
+
+    public long maxSize() {
+        return maxBytes;
+    }
+
+    /**
+     * Evicts the eldest entry of each shard in turn, starting with the one just written, until the whole
+     * cache is under the budget. Each shard is exact LRU, the cache as a whole is approximately LRU.
+     */
+    private void trimToSize(long max, int start, String keep) {
+        int empty = 0;
+        int index = start;
+        while (size.get() > max && empty <= mask) {
+            Entry evicted = shards[index].removeEldest(keep);
+            if (evicted == null) {
+                empty++;
+            } else {
+                empty = 0;
+                variants.remove(evicted.id);
+                size.addAndGet(-evicted.bytes);
+                recycle(evicted.drawable);
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void recycle(Drawable drawable) {
+        if (drawable instanceof TiledDrawable) {
+            ((TiledDrawable) drawable).evict();
+        } else if (pool != null && drawable instanceof BitmapDrawable) {
+            pool.put(((BitmapDrawable) drawable).getBitmap());
+        }
+    }
+
+    private Shard shardFor(String id) {
+        return shards[indexFor(id)];
+    }
+
+    private int indexFor(String id) {
+        int hash = id.hashCode();
+        // spread the high bits, urls sharing a long prefix differ mostly at the end
+        hash ^= (hash >>> 16);
+        return hash & mask;
+    }
+
+    private static int sizeOf(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() != null) {
+            return BitmapPool.byteCount(((BitmapDrawable) drawable).getBitmap());
+        }
+        if (drawable instanceof TiledDrawable) {
+            return ((TiledDrawable) drawable).getByteCount();
+        }
+        return UNKNOWN_BYTES;
+    }
+
+    private static class Entry {
+        private final String id;
+        private final Drawable drawable;
+        private final int bytes;
+
+        Entry(String id, Drawable drawable, int bytes) {
+            this.id = id;
+            this.drawable = drawable;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Shard {
+        private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        synchronized Drawable get(String id) {
+            Entry entry = map.get(id);
+            return entry != null ? entry.drawable : null;
+        }
+
+        synchronized Entry put(String id, Entry entry) {
+            return map.put(id, entry);
+        }
+
+        synchronized Entry remove(String id) {
+            return map.remove(id);
+        }
+
+        /**
+         * @param keep - id never removed, may be null
+         */
+        synchronized Entry removeEldest(String keep) {
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                if (!eldest.id.equals(keep)) {
+                    it.remove();
+                    return eldest;
+                }
+            }
+            return null;
+        }
+
+        synchronized Entry[] removeAll() {
+            Entry[] entries = map.values().toArray(new Entry[map.size()]);
+            map.clear();
+            return entries;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.davidparry.widgets;
 
 import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
 
 /**
  * Copyright 2015 David Parry
@@ -17,14 +18,12 @@ import com.davidparry.widgets.util.ImageCache;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-public interface ThreadLoad extends MemoryCache.Listener {
+public interface ThreadLoad extends LoadRequest, MemoryCache.Listener {
     void loadImageFromUrl(String url);
 
-    String getImageUrl();
-
     void startLoad();
 
-    ImageCache getCache();
-
     void setCache(ImageCache cache);
+
+    void setDiskCache(ImageStore diskCache);
 }
@@ -19,8 +19,14 @@ import java.lang.ref.WeakReference;
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  * See the License for the specific language governing permissions and
  * limitations under the License.
+ * <p/>
+ * @deprecated the view no longer posts through a handler of its own, completed loads are applied once per frame
+ * for every view together. Kept for code that sends LOADED or PREVIEW itself, it still updates the view.
  */
+@Deprecated
 public class ThreadLoadingHandler extends Handler {
+    public static final int LOADED = 0;
+    public static final int PREVIEW = 1;
 
     private WeakReference<ThreadLoadingImageView> weakView;
 
@@ -31,7 +37,12 @@ public class ThreadLoadingHandler extends Handler {
     @Override
     public void handleMessage(Message msg) {
         ThreadLoadingImageView view = weakView.get();
-        if (view != null) {
+        if (view == null) {
+            return;
+        }
+        if (msg.what == PREVIEW) {
+            view.updatePreviewFromCache();
+        } else {
             view.updateImageFromCache();
         }
     }
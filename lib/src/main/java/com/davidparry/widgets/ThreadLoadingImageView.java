@@ -3,18 +3,42 @@ package com.davidparry.widgets;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Message;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.ViewGroup;
 import android.widget.ImageView;
+import com.davidparry.widgets.util.BitmapDecoder;
+import com.davidparry.widgets.util.BitmapPool;
+import com.davidparry.widgets.util.CacheHeaders;
+import com.davidparry.widgets.util.DiskImageCache;
+import com.davidparry.widgets.util.EncodedMemoryCache;
 import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
+import com.davidparry.widgets.util.JpegPreview;
+import com.davidparry.widgets.util.NegativeCache;
+import com.davidparry.widgets.util.OpaqueDetector;
+import com.davidparry.widgets.util.TileCache;
+import com.davidparry.widgets.util.TiledDrawable;
+import com.davidparry.widgets.util.VariantIndex;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Copyright 2015 David Parry
@@ -33,10 +57,68 @@ import java.util.concurrent.Executors;
  */
 public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
     private static final String TAG = "ThreadLoadingImageView";
-    protected static ExecutorService executorService;
+    private static final String DISK_CACHE_DIR = "thread_loading_images";
+    private static final String HOT_SET_FILE = "thread_loading_hot_set";
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+    private static final int LOADER_THREADS = 10;
+    // tile decodes run apart from the loads, panning a large image never takes threads from downloads
+    private static final int TILE_THREADS = 2;
+    protected static ImageLoaderExecutor executorService;
+    private static ThreadPoolExecutor tileExecutor;
+    // cache ids with a download already running, later misses wait on the cache listener instead
+    private static final ConcurrentMap<String, ImageLoader> inFlight = new ConcurrentHashMap<>();
     private static ImageCache cache;
+    private static ImageStore diskCache;
+    private static volatile EncodedMemoryCache encodedCache;
+    private static TileCache tileCache;
+    private static ImageCacheTrimmer trimmer;
+    private static WarmStart warmStart;
+    private static volatile boolean preloadHotSet = true;
+    private static volatile boolean staleWhileRevalidate;
+    private static volatile ImageLoadListener loadListener;
+    private static volatile boolean progressive;
+    private static volatile Bitmap.Config defaultOpaqueConfig;
+    // urls that failed lately, loads of them skip the network until their ttl is over
+    private static final NegativeCache negativeCache = new NegativeCache();
+    private static volatile Drawable defaultErrorDrawable;
+    private static volatile UrlResolver defaultUrlResolver;
+    // what opens a url by its scheme, http and https until the caches are created add the local ones
+    private static final ConcurrentMap<String, ImageTransport> transports = new ConcurrentHashMap<>();
+
+    static {
+        ImageTransport http = new HttpTransport();
+        transports.put("http", http);
+        transports.put("https", http);
+    }
+
     private String url;
-    private ThreadLoadingHandler threadHandler;
+    private int targetWidth;
+    private int targetHeight;
+    // the id the view is registered for, loader threads read it to tag completions
+    private volatile String registeredId;
+    // the load this view is waiting on, released when the view rebinds or leaves the window
+    private ImageLoader pendingLoader;
+    // when the view last asked for its image, the start of time to display
+    private long requestedAt;
+    // waits on the preview id while the full image is still downloading
+    private final PreviewListener previewListener = new PreviewListener(this);
+    private boolean showingPreview;
+    private Bitmap.Config opaqueConfig = defaultOpaqueConfig;
+    private Drawable errorDrawable = defaultErrorDrawable;
+    private UrlResolver urlResolver = defaultUrlResolver;
+    // the url is known but not the size to decode it for, the load starts once layout gives one
+    private boolean waitingForSize;
+    // a wrap_content view with no image lays out at zero, after its first layout the size is as known as it gets
+    private boolean laidOut;
+    private boolean tiled;
+    private boolean showingError;
+    // tries a transiently failed image again once its backoff is over
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            retryFailedLoad();
+        }
+    };
 
     public ThreadLoadingImageView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -53,32 +135,135 @@ public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
     }
 
     private void init(AttributeSet attrs, int defStyleAttr) {
+        ensureCaches(getContext());
+        // check to see if the developer is passing in a http link to a image
+        loadAttributes(attrs, defStyleAttr);
+        if (getImageUrl() != null && getImageUrl().length() > 0) {
+            loadImageFromUrl(getImageUrl());
+        }
+    }
+
+    /**
+     * Creates the memory and disk caches every view shares, a prefetch may need them before any view exists
+     */
+    static synchronized void ensureCaches(Context context) {
         if (cache == null) {
-            ActivityManager am = (ActivityManager) getContext().getSystemService(
+            ActivityManager am = (ActivityManager) context.getSystemService(
                     Context.ACTIVITY_SERVICE);
             int maxKb = am.getMemoryClass() * 1024;
             int limitKb = maxKb / 6;
-            cache = new MemoryCache(limitKb);
+            cache = new ShardedMemoryCache(limitKb, new BitmapPool(maxKb / 24 * 1024L));
+            // encoded bytes are a tenth or less of their bitmap, the same memory covers far more images
+            encodedCache = new EncodedMemoryCache(maxKb / 8 * 1024L);
+            // tiles cover what is on screen at most a few times over, however large the images behind them
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            long screenBytes = (long) metrics.widthPixels * metrics.heightPixels * 4;
+            tileCache = new TileCache((int) Math.min(screenBytes * 4, maxKb / 8 * 1024L));
+            // the budget is sized once, after that it follows the system's memory pressure
+            trimmer = new ImageCacheTrimmer(cache, encodedCache, tileCache);
+            Context application = context.getApplicationContext();
+            (application != null ? application : context).registerComponentCallbacks(trimmer);
         }
-        // check to see if the developer is passing in a http link to a image
-        loadAttributes(attrs, defStyleAttr);
-        threadHandler = new ThreadLoadingHandler(this);
-        if (getImageUrl() != null && getImageUrl().length() > 0) {
-            loadImageFromUrl(getImageUrl());
+        if (diskCache == null) {
+            // opening reads the journal, that is deferred until the first loader thread touches it
+            diskCache = new DiskImageCache(new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+        }
+        if (!transports.containsKey(LocalTransport.SCHEME_CONTENT)) {
+            // set before the first view, a transport of the app's own for a local scheme is kept
+            LocalTransport local = new LocalTransport(context.getApplicationContext() != null
+                    ? context.getApplicationContext() : context);
+            transports.putIfAbsent(LocalTransport.SCHEME_FILE, local);
+            transports.putIfAbsent(LocalTransport.SCHEME_ASSET, local);
+            transports.putIfAbsent(LocalTransport.SCHEME_CONTENT, local);
+        }
+        if (warmStart == null) {
+            // next to the disk cache directory, not in it, the disk cache sweeps files it does not know
+            warmStart = new WarmStart(new File(context.getCacheDir(), HOT_SET_FILE), getLoaderExecutor());
+            Context application = context.getApplicationContext();
+            (application != null ? application : context).registerComponentCallbacks(warmStart);
+            if (preloadHotSet) {
+                warmStart.preloadAsync(cache, diskCache, defaultOpaqueConfig);
+            }
         }
     }
 
+    /**
+     * Creates the shared caches and starts preloading the images shown most on recent launches, call from
+     * Application.onCreate so the preload is ahead of the first screen
+     */
+    public static void warmUp(Context context) {
+        ensureCaches(context);
+    }
+
+    static ImageCache sharedCache() {
+        return cache;
+    }
+
+    static ImageStore sharedDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * True when the view has a size of its own to decode for, from layout or from exact layout params
+     */
+    private boolean hasKnownSize() {
+        if (laidOut) {
+            return true;
+        }
+        ViewGroup.LayoutParams params = getLayoutParams();
+        boolean knownWidth = getWidth() > 0 || (params != null && params.width > 0);
+        boolean knownHeight = getHeight() > 0 || (params != null && params.height > 0);
+        return knownWidth && knownHeight;
+    }
+
+    /**
+     * Fixes the decode size for the current url, measured size first, then exact layout params, then the screen
+     * for a side that is wrap_content and laid out at zero
+     */
+    private void resolveTargetSize() {
+        int w = getWidth() - getPaddingLeft() - getPaddingRight();
+        int h = getHeight() - getPaddingTop() - getPaddingBottom();
+        ViewGroup.LayoutParams params = getLayoutParams();
+        if (w <= 0 && params != null && params.width > 0) {
+            w = params.width;
+        }
+        if (h <= 0 && params != null && params.height > 0) {
+            h = params.height;
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        if (w <= 0) {
+            w = metrics.widthPixels;
+        }
+        if (h <= 0) {
+            h = metrics.heightPixels;
+        }
+        this.targetWidth = w;
+        this.targetHeight = h;
+    }
+
     private void prepareForCacheLoading() {
+        registeredId = getCacheId();
         cache.registerListener(this);
+        if (progressive) {
+            cache.registerListener(previewListener);
+        }
     }
 
     private void setDrawableImageFromCache() {
         if (getCacheId() != null) {
-            Drawable drawable = cache.get(getCacheId());
+            requestedAt = System.nanoTime();
+            Drawable drawable = showFromCache(getCacheId());
             if (drawable != null) {
                 // no need to call and start loading someone else loaded the image in the cache
-                setImageDrawable(drawable);
+                recordDisplayed();
+                ImageLoadListener listener = loadListener;
+                if (listener != null) {
+                    listener.onDisplayed(getCacheId(), ImageLoadEvent.Tier.MEMORY, System.nanoTime() - requestedAt, 0);
+                }
             } else {
+                if (progressive) {
+                    updatePreviewFromCache();
+                }
                 startLoad();
             }
         }
@@ -96,13 +281,390 @@ public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
         }
     }
 
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        showingPreview = false;
+        showingError = false;
+        Drawable previous = getDrawable();
+        super.setImageDrawable(drawable);
+        if (previous != drawable) {
+            // an evicted tiled image keeps its decoder until no view shows it
+            if (drawable instanceof TiledDrawable) {
+                ((TiledDrawable) drawable).markDisplayed();
+            }
+            if (previous instanceof TiledDrawable) {
+                ((TiledDrawable) previous).markHidden();
+            }
+        }
+        // let the pool know which cached bitmaps are on screen so it never reuses them under this view
+        BitmapPool pool = cache != null ? cache.getBitmapPool() : null;
+        if (pool != null && previous != drawable) {
+            if (drawable instanceof BitmapDrawable) {
+                pool.markDisplayed(((BitmapDrawable) drawable).getBitmap());
+            }
+            if (previous instanceof BitmapDrawable) {
+                pool.markHidden(((BitmapDrawable) previous).getBitmap());
+            }
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        laidOut = true;
+        if (waitingForSize) {
+            loadImageFromUrl(url);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (trimmer != null) {
+            trimmer.onForeground();
+        }
+        // a load dropped while detached has to be picked up again
+        if ((getDrawable() == null || showingPreview || showingError) && getCacheId() != null && cache != null) {
+            prepareForCacheLoading();
+            setDrawableImageFromCache();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(retry);
+        cancelPendingLoad();
+        if (cache != null) {
+            cache.unregisterListener(this);
+            cache.unregisterListener(previewListener);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    private void cancelPendingLoad() {
+        if (pendingLoader != null) {
+            pendingLoader.release();
+            pendingLoader = null;
+        }
+    }
+
+    /**
+     * The executor shared by all image loads, exposes queue depth and cancellation counts
+     */
+    public static synchronized ImageLoaderExecutor getLoaderExecutor() {
+        if (executorService == null) {
+            executorService = new ImageLoaderExecutor(LOADER_THREADS);
+        }
+        return executorService;
+    }
+
+    /**
+     * Decodes the tiles of tiled images, a few threads of their own outside the per host limits of the loads
+     */
+    static synchronized Executor getTileExecutor() {
+        if (tileExecutor == null) {
+            tileExecutor = new ThreadPoolExecutor(TILE_THREADS, TILE_THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ImageLoaderExecutor.LoaderThreadFactory());
+            tileExecutor.allowCoreThreadTimeOut(true);
+        }
+        return tileExecutor;
+    }
+
+    /**
+     * Whether the caches, once created, are filled with the images displayed most on recent launches,
+     * on by default
+     */
+    public static void setPreloadHotSet(boolean preload) {
+        preloadHotSet = preload;
+    }
+
+    /**
+     * @return the display counts and warm start timings, null until the caches exist
+     */
+    public static synchronized WarmStart getWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Replaces the tier of encoded bytes a decoded cache miss is decoded from again, null to turn it off
+     */
+    public static void setEncodedCache(EncodedMemoryCache cache) {
+        encodedCache = cache;
+    }
+
+    public static EncodedMemoryCache getEncodedCache() {
+        return encodedCache;
+    }
+
+    /**
+     * Tiles of the images of tiled views, null until the caches exist
+     */
+    public static synchronized TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Decodes the image by region for images far larger than the view, maps and scanned pages. The view shows
+     * a base layer decoded for its size and, where it is drawn scaled up, tiles of the visible part at the
+     * detail the scale needs, decoded in the background. Pan and zoom by setting an image matrix with
+     * {@link ImageView.ScaleType#MATRIX}. A tiled view downloads the original, never a rendition from a url
+     * resolver. Set before the url.
+     */
+    public void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+
+    @Override
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    /**
+     * When enabled an expired disk entry is shown right away and revalidated in the background instead of
+     * waiting on the conditional request
+     */
+    public static void setStaleWhileRevalidate(boolean enabled) {
+        staleWhileRevalidate = enabled;
+    }
+
+    /**
+     * When enabled a download shows a downsampled preview first, the exif thumbnail or an early decode of a
+     * progressive jpeg, and swaps in the full image once it is complete
+     */
+    public static void setProgressive(boolean enabled) {
+        progressive = enabled;
+    }
+
+    /**
+     * Pixel format views created from now on decode opaque images into, see {@link #setOpaqueConfig(Bitmap.Config)}
+     */
+    public static void setDefaultOpaqueConfig(Bitmap.Config config) {
+        defaultOpaqueConfig = config;
+    }
+
+    public static Bitmap.Config getDefaultOpaqueConfig() {
+        return defaultOpaqueConfig;
+    }
+
+    /**
+     * Decodes images that cannot have transparent pixels, jpegs and pngs without alpha, into this format.
+     * RGB_565 halves their memory and doubles what the cache holds, null keeps ARGB_8888. Views of the same
+     * url and size share one cache entry, so give them the same setting.
+     */
+    public void setOpaqueConfig(Bitmap.Config config) {
+        this.opaqueConfig = config;
+    }
+
+    @Override
+    public Bitmap.Config getOpaqueConfig() {
+        return opaqueConfig;
+    }
+
+    /**
+     * Drawable views created from now on show when their image fails to load, see {@link #setErrorDrawable}
+     */
+    public static void setDefaultErrorDrawable(Drawable drawable) {
+        defaultErrorDrawable = drawable;
+    }
+
+    /**
+     * Shown in place of the image when its url recently failed, null keeps whatever is showing. A 404 stays
+     * for a while, a timeout or a 5xx is tried again with a growing backoff while the view is attached.
+     */
+    public void setErrorDrawable(Drawable drawable) {
+        this.errorDrawable = drawable;
+    }
+
+    /**
+     * Resolver views created from now on download through, see {@link #setUrlResolver(UrlResolver)}
+     */
+    public static void setDefaultUrlResolver(UrlResolver resolver) {
+        defaultUrlResolver = resolver;
+    }
+
+    public static UrlResolver getDefaultUrlResolver() {
+        return defaultUrlResolver;
+    }
+
+    /**
+     * Rewrites the url downloaded for the view's measured size, for a cdn that serves resized renditions.
+     * Memory cache ids stay those of the url the view was given, the disk tier keeps each rendition under the
+     * url it came from.
+     */
+    public void setUrlResolver(UrlResolver resolver) {
+        this.urlResolver = resolver;
+    }
+
+    public UrlResolver getUrlResolver() {
+        return urlResolver;
+    }
+
+    /**
+     * Opens urls of the scheme through the transport, for every view. http and https download over
+     * {@link HttpTransport} unless replaced, for a client that multiplexes requests over http/2 say. file, asset
+     * and content urls are decoded where they lie and skip the disk tier.
+     *
+     * @param scheme    - lower case, as in http or content
+     * @param transport - null to stop loading the scheme
+     */
+    public static void setTransport(String scheme, ImageTransport transport) {
+        if (transport == null) {
+            transports.remove(scheme);
+        } else {
+            transports.put(scheme, transport);
+        }
+    }
+
+    public static ImageTransport getTransport(String scheme) {
+        return transports.get(scheme);
+    }
+
+    /**
+     * The transport for the scheme of the url, a url without a known scheme is tried over http
+     */
+    static ImageTransport transportFor(String url) {
+        int colon = url != null ? url.indexOf(':') : -1;
+        ImageTransport transport = colon > 0 ? transports.get(url.substring(0, colon).toLowerCase(Locale.US)) : null;
+        if (transport != null) {
+            return transport;
+        }
+        if (colon > 0 && LocalTransport.SCHEME_FILE.equalsIgnoreCase(url.substring(0, colon))) {
+            // loaded before any view created the caches, a file needs no context
+            return new LocalTransport(null);
+        }
+        ImageTransport http = transports.get("http");
+        return http != null ? http : new HttpTransport();
+    }
+
+    /**
+     * Failed urls and when each may be tried again, shared by every view
+     */
+    public static NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Memory cache id the preview for a cache id is kept under while the full image downloads
+     */
+    public static String previewIdFor(String cacheId) {
+        return cacheId + "#preview";
+    }
+
+    /**
+     * Receives timing, bytes and outcome of every load and display, null to stop. Pass an
+     * {@link ImagePipelineMetrics} for counters and latency histograms.
+     */
+    public static void setLoadListener(ImageLoadListener listener) {
+        loadListener = listener;
+    }
+
+    public static ImageLoadListener getLoadListener() {
+        return loadListener;
+    }
+
     protected void setUrl(String url) {
         this.url = url;
     }
 
+    /**
+     * Called once per frame for each view whose image or preview arrived, a view rebound to another url since
+     * is left alone
+     */
+    void deliver(String cacheId, boolean preview) {
+        if (!cacheId.equals(getCacheId())) {
+            return;
+        }
+        if (preview) {
+            updatePreviewFromCache();
+        } else {
+            updateImageFromCache();
+        }
+    }
+
+    protected void updatePreviewFromCache() {
+        if (getCacheId() == null || cache.get(getCacheId()) != null) {
+            // the full image got here first
+            return;
+        }
+        if (showFromCache(previewIdFor(getCacheId())) != null) {
+            showingPreview = true;
+        }
+    }
+
     protected void updateImageFromCache() {
-        setImageDrawable(cache.get(getCacheId()));
-        invalidate();
+        ImageLoader load = pendingLoader;
+        if (showFromCache(getCacheId()) == null) {
+            if (load != null && load.cacheId.equals(getCacheId()) && load.cachedAt != 0
+                    && negativeCache.getBlocking(getRequestUrl(), System.currentTimeMillis()) == null) {
+                // the image got to the cache but was evicted again before the frame came, nothing failed
+                cancelPendingLoad();
+                startLoad();
+            } else {
+                showFailure();
+            }
+            return;
+        }
+        recordDisplayed();
+        ImageLoadListener listener = loadListener;
+        if (listener != null && load != null && load.cacheId.equals(getCacheId())) {
+            long now = System.nanoTime();
+            listener.onDisplayed(getCacheId(), load.tier, now - requestedAt, now - load.cachedAt);
+        }
+    }
+
+    /**
+     * Shows the cached drawable of the id, its bitmap is held in the pool from the lookup on so an eviction
+     * before it is shown cannot hand it to another decode
+     *
+     * @return the drawable shown, null when the id is not cached
+     */
+    private Drawable showFromCache(String id) {
+        BitmapPool pool = cache.getBitmapPool();
+        Drawable drawable = pool != null ? pool.getAndMarkDisplayed(cache, id) : cache.get(id);
+        if (drawable != null) {
+            setImageDrawable(drawable);
+        }
+        if (pool != null && drawable instanceof BitmapDrawable) {
+            // setImageDrawable holds it for as long as it is shown
+            pool.markHidden(((BitmapDrawable) drawable).getBitmap());
+        }
+        return drawable;
+    }
+
+    private void recordDisplayed() {
+        WarmStart hotSet = warmStart;
+        if (hotSet != null) {
+            // a preload would decode a tiled image whole, only the time to first image is counted
+            hotSet.recordDisplayed(tiled ? null : getImageUrl(), targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Shows the error drawable when the url is held back by a recent failure and schedules the retry of a
+     * transient one, anything else keeps what is showing
+     */
+    private void showFailure() {
+        NegativeCache.Failure failure = negativeCache.getBlocking(getRequestUrl(), System.currentTimeMillis());
+        if (failure == null) {
+            return;
+        }
+        Drawable error = errorDrawable;
+        if (error != null && (getDrawable() == null || showingPreview || showingError)) {
+            setImageDrawable(error);
+            showingError = true;
+        }
+        removeCallbacks(retry);
+        if (failure.getReason().isTransient()) {
+            postDelayed(retry, Math.max(0, failure.getRetryAt() - System.currentTimeMillis()));
+        }
+    }
+
+    private void retryFailedLoad() {
+        if (getCacheId() == null || cache == null || cache.get(getCacheId()) != null) {
+            return;
+        }
+        prepareForCacheLoading();
+        setDrawableImageFromCache();
     }
 
     @Override
@@ -115,13 +677,61 @@ public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
         this.cache = cache;
     }
 
+    @Override
+    public ImageStore getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Replaces the disk tier of every view, a {@link com.davidparry.widgets.util.PackFileStore} suits screens of
+     * small thumbnails better than a file per image
+     */
+    @Override
+    public void setDiskCache(ImageStore diskCache) {
+        ThreadLoadingImageView.diskCache = diskCache;
+    }
+
     @Override
     public void startLoad() {
-        if (executorService == null) {
-            executorService = Executors.newFixedThreadPool(10);
+        if (pendingLoader != null) {
+            if (pendingLoader.isActive() && pendingLoader.cacheId.equals(getCacheId())) {
+                return;
+            }
+            cancelPendingLoad();
         }
-        executorService.submit(new ImageLoader(this));
+        int priority = isShown() ? ImageLoader.PRIORITY_VISIBLE : ImageLoader.PRIORITY_NORMAL;
+        pendingLoader = submit(this, priority);
+    }
 
+    /**
+     * Starts a load for the request or joins the one already running for its cache id, a joining request
+     * with a higher priority moves the queued load up
+     *
+     * @return the load the caller now holds and has to release, null when there is no cache id to share it by
+     */
+    static ImageLoader submit(LoadRequest load, int priority) {
+        ImageLoaderExecutor executor = getLoaderExecutor();
+        ImageLoader imageLoader = new ImageLoader(load, priority);
+        String id = load.getCacheId();
+        if (id == null) {
+            executor.execute(imageLoader);
+            return null;
+        }
+        while (true) {
+            ImageLoader existing = inFlight.putIfAbsent(id, imageLoader);
+            if (existing == null) {
+                executor.execute(imageLoader);
+                return imageLoader;
+            }
+            if (existing.attach()) {
+                if (priority > existing.getPriority()) {
+                    executor.reprioritize(existing, priority);
+                }
+                return existing;
+            }
+            // cancelled between the lookup and the attach, it is on its way out of the table
+            inFlight.remove(id, existing);
+        }
     }
 
     @Override
@@ -129,20 +739,82 @@ public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
         return this.url;
     }
 
+    @Override
+    public int getTargetWidth() {
+        return this.targetWidth;
+    }
+
+    @Override
+    public int getTargetHeight() {
+        return this.targetHeight;
+    }
+
     @Override
     public void loadImageFromUrl(String url) {
         // someone is passing a url to load this ImageView
         this.url = url;
+        if (url != null && !hasKnownSize()) {
+            // a row bound before layout would decode for the whole screen and cache it under that size, wait
+            waitingForSize = true;
+            cancelPendingLoad();
+            removeCallbacks(retry);
+            cache.unregisterListener(this);
+            cache.unregisterListener(previewListener);
+            return;
+        }
+        waitingForSize = false;
+        resolveTargetSize();
+        if (pendingLoader != null && !pendingLoader.cacheId.equals(getCacheId())) {
+            cancelPendingLoad();
+        }
+        removeCallbacks(retry);
         // even if the cache was previously set need to understand url might be new so need to reload potentially
         prepareForCacheLoading();
         setDrawableImageFromCache();
 
     }
 
+    @Override
+    public String getRequestUrl() {
+        // tiles are cut from the original, a rendition would lose the detail they are there for
+        return requestUrlFor(getImageUrl(), targetWidth, targetHeight, tiled ? null : urlResolver);
+    }
+
+    /**
+     * Url downloaded for an image decoded at a size, the image url itself without a resolver
+     */
+    static String requestUrlFor(String url, int width, int height, UrlResolver resolver) {
+        // renditions are a cdn's, a local image is decoded to the size from the one copy there is
+        if (url == null || resolver == null || transportFor(url).isLocal()) {
+            return url;
+        }
+        String resolved = resolver.resolve(url, width, height);
+        return resolved != null ? resolved : url;
+    }
+
     @Override
     public String getCacheId() {
-        // right now using the image url might hash down the road even though map hashes it
-        return getImageUrl();
+        // the same url decoded for different sizes are different bitmaps
+        if (getImageUrl() == null || waitingForSize) {
+            return null;
+        }
+        String id = cacheIdFor(getImageUrl(), targetWidth, targetHeight);
+        return tiled ? tiledIdFor(id) : id;
+    }
+
+    /**
+     * Memory cache id a tiled image is kept under, apart from the plain decode of the same url and size and
+     * never used to scale other sizes from
+     */
+    public static String tiledIdFor(String cacheId) {
+        return cacheId + "#tiles";
+    }
+
+    /**
+     * Memory cache id of a url decoded for a size, the same id a view of that size without padding uses
+     */
+    public static String cacheIdFor(String url, int width, int height) {
+        return VariantIndex.idFor(url, width, height);
     }
 
     /**
@@ -150,48 +822,542 @@ public class ThreadLoadingImageView extends ImageView implements ThreadLoad {
      */
     @Override
     public void loaded() {
-        threadHandler.sendMessage(Message.obtain());
+        FrameDelivery.getInstance().deliver(this, registeredId, false);
+    }
+
+    /**
+     * Registered for the preview id next to the view itself, the registry notifies one id per listener
+     */
+    private static class PreviewListener implements MemoryCache.Listener {
+        private final ThreadLoadingImageView view;
+
+        PreviewListener(ThreadLoadingImageView view) {
+            this.view = view;
+        }
+
+        @Override
+        public void loaded() {
+            FrameDelivery.getInstance().deliver(view, view.registeredId, true);
+        }
+
+        @Override
+        public String getCacheId() {
+            return view.getCacheId() != null ? previewIdFor(view.getCacheId()) : null;
+        }
     }
 
     public static class ImageLoader implements Runnable {
-        private ThreadLoad loader;
+        public static final int PRIORITY_LOW = -10;
+        public static final int PRIORITY_NORMAL = 0;
+        public static final int PRIORITY_VISIBLE = 10;
+        private static final AtomicLong sequencer = new AtomicLong();
+        // a preview is first tried once this much arrived and again each time the download doubles
+        private static final int PREVIEW_START = 16 * 1024;
+        // how much smaller than the target an early decode of a partial download is
+        private static final int PREVIEW_SCALE = 8;
+        // captured up front, a finished load held by a view's pendingLoader must not pin the first requester
+        private final ImageCache memoryTier;
+        private final ImageStore diskTier;
+        private final String imageUrl;
+        // what is downloaded and kept in the byte tiers, the image url or a rendition of it
+        private final String requestUrl;
+        private final String cacheId;
+        private final String host;
+        private final int targetWidth;
+        private final int targetHeight;
+        private final Bitmap.Config opaqueConfig;
+        private final boolean tiled;
+        private String contentType;
+        private volatile int priority;
+        private final long sequence;
+        // views attached to this load, it is cancelled when the last one lets go
+        private int requesters = 1;
+        private boolean finished;
+        private volatile boolean cancelled;
+        private final long createdAt;
+        private long startedAt;
+        // what this load went through, reported to the load listener when it ends
+        private volatile ImageLoadEvent.Tier tier;
+        private volatile long cachedAt;
+        private boolean succeeded;
+        // a preview of this load is in the memory cache under the preview id
+        private boolean previewCached;
+        private long connectNanos;
+        private long downloadNanos;
+        private long decodeNanos;
+        private long bytes;
+        private Exception error;
+
+        public ImageLoader(LoadRequest loader) {
+            this(loader, PRIORITY_NORMAL);
+        }
 
-        public ImageLoader(ThreadLoad loader) {
-            this.loader = loader;
+        public ImageLoader(LoadRequest loader, int priority) {
+            this.memoryTier = loader.getCache();
+            this.diskTier = loader.getDiskCache();
+            this.priority = priority;
+            this.sequence = sequencer.incrementAndGet();
+            this.createdAt = System.nanoTime();
+            // capture these now, the view may be rebound to another url before this runs
+            this.imageUrl = loader.getImageUrl();
+            this.requestUrl = loader.getRequestUrl();
+            this.cacheId = loader.getCacheId();
+            this.targetWidth = loader.getTargetWidth();
+            this.targetHeight = loader.getTargetHeight();
+            this.opaqueConfig = loader.getOpaqueConfig();
+            this.tiled = loader.isTiled();
+            this.host = hostOf(requestUrl);
+        }
+
+        private static String hostOf(String url) {
+            try {
+                String host = new URL(url).getHost();
+                return host != null ? host : "";
+            } catch (Exception er) {
+                return "";
+            }
+        }
+
+        /**
+         * @return the host this load downloads from, loads are limited per host
+         */
+        public String getHost() {
+            return host;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        void setPriority(int priority) {
+            this.priority = priority;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public synchronized boolean isActive() {
+            return !finished && !cancelled;
+        }
+
+        /**
+         * Another view wants the same image, false when this load is already finished or cancelled
+         */
+        synchronized boolean attach() {
+            if (!isActive()) {
+                return false;
+            }
+            requesters++;
+            return true;
+        }
+
+        /**
+         * A view no longer wants this image, the last one to let go cancels the load, a running download
+         * stops at its next buffer so the ui thread never touches the socket
+         */
+        void release() {
+            synchronized (this) {
+                if (!isActive() || --requesters > 0) {
+                    return;
+                }
+                cancelled = true;
+            }
+            if (cacheId != null) {
+                inFlight.remove(cacheId, this);
+            }
+            if (getLoaderExecutor().cancel(this)) {
+                // never got to run, so run will not report it
+                report();
+            }
+        }
+
+        private byte[] readUnlessCancelled(InputStream input, int contentLength) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 8192);
+            byte[] buffer = new byte[8192];
+            boolean preview = progressive && memoryTier != null;
+            int nextPreview = PREVIEW_START;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                if (cancelled) {
+                    return null;
+                }
+                out.write(buffer, 0, read);
+                if (preview && out.size() >= nextPreview && out.size() != contentLength) {
+                    preview = !showPreview(out.toByteArray(), contentLength);
+                    nextPreview = out.size() * 2;
+                }
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Puts a downsampled preview under the preview id from the part of the download that arrived
+         *
+         * @return true when there is no need to try again, a preview is cached or the full image already is
+         */
+        private boolean showPreview(byte[] partial, int contentLength) {
+            ImageCache memory = memoryTier;
+            if (cacheId == null || memory.get(cacheId) != null) {
+                return true;
+            }
+            Bitmap preview = null;
+            try {
+                byte[] thumbnail = JpegPreview.exifThumbnail(partial, partial.length);
+                if (thumbnail != null) {
+                    preview = BitmapDecoder.decode(thumbnail, targetWidth, targetHeight, null, opaqueConfig);
+                } else if (contentLength > 0 && partial.length >= contentLength / 2
+                        && JpegPreview.isProgressive(partial, partial.length)) {
+                    // the first scans of a progressive jpeg cover the whole picture, a coarse decode is enough
+                    preview = BitmapDecoder.decode(partial, Math.max(1, targetWidth / PREVIEW_SCALE),
+                            Math.max(1, targetHeight / PREVIEW_SCALE), null, opaqueConfig);
+                }
+            } catch (RuntimeException er) {
+                // a preview is a nicety, a malformed header must not fail the download behind it
+                Log.e(TAG, "No preview for " + cacheId, er);
+                return true;
+            }
+            if (preview == null) {
+                return false;
+            }
+            memory.put(previewIdFor(cacheId), new BitmapDrawable(null, preview));
+            previewCached = true;
+            return true;
         }
 
         public void run() {
-            HttpURLConnection connection = null;
+            startedAt = System.nanoTime();
             try {
-                URL url = new URL(loader.getImageUrl());
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setConnectTimeout(30000);
-                connection.setReadTimeout(30000);
-                connection.setInstanceFollowRedirects(true);
-                connection.connect();
-                InputStream input = connection.getInputStream();
-                String full = url.getFile();
-                int start = full.lastIndexOf("/") + 1;
-                if (full.length() > 0) {
-                    full = full.substring(start);
-                }
-                if (input != null) {
-                    Drawable image = Drawable.createFromStream(input, full);
-                    if (image != null) {
-                        if (loader.getCache() != null) {
-                            loader.getCache().put(this.loader.getCacheId(), image);
-                        }
+                if (cancelled) {
+                    return;
+                }
+                if (scaleLargerVariant()) {
+                    tier = ImageLoadEvent.Tier.VARIANT;
+                    succeeded = true;
+                    return;
+                }
+                ImageTransport transport = transportFor(requestUrl);
+                if (transport.isLocal()) {
+                    // already on the device, a copy in the byte tiers would only double it
+                    tier = ImageLoadEvent.Tier.LOCAL;
+                    succeeded = memoryTier == null || decodeLocal(transport);
+                    return;
+                }
+                ImageStore disk = diskTier;
+                if (memoryTier == null && disk != null && disk.isFresh(requestUrl, System.currentTimeMillis())) {
+                    // warming the disk tier only and it is already warm
+                    tier = ImageLoadEvent.Tier.DISK;
+                    succeeded = true;
+                    return;
+                }
+                EncodedMemoryCache encoded = memoryTier != null ? encodedCache : null;
+                EncodedMemoryCache.Entry held = encoded != null ? encoded.get(requestUrl) : null;
+                if (held != null && (held.headers == null || held.headers.isFresh(System.currentTimeMillis()))) {
+                    // the decoded bitmap was evicted but its bytes are still in memory
+                    tier = ImageLoadEvent.Tier.ENCODED;
+                    bytes += held.data.remaining();
+                    if (decodeAndCache(held.data)) {
+                        succeeded = true;
+                        return;
+                    }
+                }
+                ImageStore.Entry stored = disk != null ? disk.getEntry(requestUrl) : null;
+                if (stored != null) {
+                    bytes += stored.length();
+                }
+                if (stored != null && (stored.headers == null || stored.headers.isFresh(System.currentTimeMillis()))) {
+                    tier = ImageLoadEvent.Tier.DISK;
+                    succeeded = decodeAndCache(stored.data);
+                    if (succeeded) {
+                        hold(encoded, stored, stored.headers);
+                    }
+                    return;
+                }
+                NegativeCache.Failure failure = negativeCache.getBlocking(requestUrl, System.currentTimeMillis());
+                if (failure != null) {
+                    // failed lately, a stale copy is better than nothing and the server is left alone for now
+                    error = new IOException("Skipped " + requestUrl + " after " + failure);
+                    if (stored != null) {
+                        tier = ImageLoadEvent.Tier.DISK;
+                        succeeded = decodeAndCache(stored.data);
+                    }
+                    return;
+                }
+                if (stored != null && staleWhileRevalidate) {
+                    // show the stale copy now, the refreshed one is there for the next bind
+                    tier = ImageLoadEvent.Tier.DISK;
+                    succeeded = decodeAndCache(stored.data);
+                    Response response = fetch(transport, stored.headers);
+                    if (response != null && response.notModified) {
+                        disk.updateHeaders(requestUrl, response.headers);
+                        hold(encoded, stored, response.headers);
+                    } else if (response != null && decodeAndCache(ByteBuffer.wrap(response.data))) {
+                        succeeded = true;
+                        store(disk, response);
+                        hold(encoded, response.data, response.headers);
+                    } else if (response != null && !cancelled) {
+                        negativeCache.recordFailure(requestUrl, NegativeCache.Reason.NOT_AN_IMAGE,
+                                System.currentTimeMillis());
+                    }
+                    return;
+                }
+                Response response = fetch(transport, stored != null ? stored.headers : null);
+                if (response == null) {
+                    return;
+                }
+                if (response.notModified) {
+                    // unchanged on the server, no body came over the wire
+                    tier = ImageLoadEvent.Tier.REVALIDATED;
+                    disk.updateHeaders(requestUrl, response.headers);
+                    succeeded = decodeAndCache(stored.data);
+                    if (succeeded) {
+                        hold(encoded, stored, response.headers);
+                    }
+                } else {
+                    tier = ImageLoadEvent.Tier.NETWORK;
+                    succeeded = decodeAndCache(ByteBuffer.wrap(response.data));
+                    if (succeeded) {
+                        // only keep bytes that decoded, an error page should not outlive the request
+                        store(disk, response);
+                        hold(encoded, response.data, response.headers);
+                    } else if (!cancelled) {
+                        negativeCache.recordFailure(requestUrl, NegativeCache.Reason.NOT_AN_IMAGE,
+                                System.currentTimeMillis());
                     }
                 }
             } catch (Exception er) {
-                Log.e(TAG, "Error loading Image", er);
+                error = er;
+                if (!cancelled) {
+                    Log.e(TAG, "Error loading Image", er);
+                    NegativeCache.Reason reason = NegativeCache.reasonFor(er);
+                    if (reason != null) {
+                        negativeCache.recordFailure(requestUrl, reason, System.currentTimeMillis());
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                }
+                if (cacheId != null) {
+                    inFlight.remove(cacheId, this);
+                }
+                ImageCache memory = memoryTier;
+                if (!succeeded && !cancelled && memory != null && cacheId != null) {
+                    // views waiting on the id hear about the failure the way they hear about an image
+                    memory.notifyFailed(cacheId);
+                }
+                report();
+            }
+        }
+
+        private void report() {
+            ImageLoadListener listener = loadListener;
+            if (listener == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            ImageLoadEvent.Outcome outcome = cancelled ? ImageLoadEvent.Outcome.CANCELLED
+                    : succeeded ? ImageLoadEvent.Outcome.SUCCESS : ImageLoadEvent.Outcome.FAILED;
+            long queued = (startedAt != 0 ? startedAt : now) - createdAt;
+            try {
+                listener.onLoadFinished(new ImageLoadEvent(imageUrl, cacheId, tier, outcome, queued, connectNanos,
+                        downloadNanos, decodeNanos, now - createdAt, bytes, error));
+            } catch (RuntimeException er) {
+                Log.e(TAG, "Error in image load listener", er);
+            }
+        }
+
+        /**
+         * Decodes a file, asset or content url from its mapped pages, or from its stream when it has no descriptor
+         */
+        private boolean decodeLocal(ImageTransport transport) throws IOException {
+            long connectStart = System.nanoTime();
+            ImageTransport.Response opened = transport.open(requestUrl, null);
+            connectNanos += System.nanoTime() - connectStart;
+            boolean complete = false;
+            try {
+                contentType = opened.getContentType();
+                ByteBuffer data = opened.getData();
+                if (data == null) {
+                    long downloadStart = System.nanoTime();
+                    byte[] read = readUnlessCancelled(opened.getBody(), opened.getContentLength());
+                    downloadNanos += System.nanoTime() - downloadStart;
+                    if (read == null) {
+                        return false;
+                    }
+                    data = ByteBuffer.wrap(read);
+                }
+                complete = true;
+                bytes += data.remaining();
+                return decodeAndCache(data);
+            } finally {
+                opened.close(complete);
+            }
+        }
+
+        /**
+         * Downloads the image, conditionally when there are validators to send
+         *
+         * @return the response or null when the load was cancelled while reading
+         */
+        private Response fetch(ImageTransport transport, CacheHeaders validators) throws IOException {
+            long connectStart = System.nanoTime();
+            ImageTransport.Response opened = transport.open(requestUrl, validators);
+            connectNanos += System.nanoTime() - connectStart;
+            // a connection is only handed back to the keep-alive pool once its body was read to the end
+            boolean complete = false;
+            try {
+                if (opened.isNotModified()) {
+                    complete = true;
+                    negativeCache.clear(requestUrl);
+                    return new Response(null, opened.getHeaders(), true);
+                }
+                long downloadStart = System.nanoTime();
+                contentType = opened.getContentType();
+                byte[] data;
+                if (opened.getData() != null) {
+                    ByteBuffer buffer = opened.getData();
+                    data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                } else {
+                    data = readUnlessCancelled(opened.getBody(), opened.getContentLength());
+                }
+                downloadNanos += System.nanoTime() - downloadStart;
+                if (data == null) {
+                    return null;
+                }
+                complete = true;
+                bytes += data.length;
+                negativeCache.clear(requestUrl);
+                // a transport without freshness headers leaves the copy to be revalidated on every load
+                CacheHeaders headers = opened.getHeaders() != null ? opened.getHeaders()
+                        : CacheHeaders.fromHeaders(null, null, null, 0, 0, 0, System.currentTimeMillis());
+                return new Response(data, headers, false);
+            } finally {
+                opened.close(complete);
+            }
+        }
+
+        /**
+         * Decodes into the memory tier, without one the bytes are only checked to be an image
+         *
+         * @return true when the bytes are an image worth keeping on disk
+         */
+        private boolean decodeAndCache(ByteBuffer data) {
+            if (data == null || cancelled) {
+                return false;
+            }
+            ImageCache memory = memoryTier;
+            if (memory == null) {
+                return BitmapDecoder.isImage(data);
+            }
+            long decodeStart = System.nanoTime();
+            BitmapPool pool = memory.getBitmapPool();
+            Bitmap.Config config = opaqueConfig != null && OpaqueDetector.isOpaque(data, contentType) ? opaqueConfig : null;
+            TileCache tiles = tileCache;
+            if (tiled && tiles != null) {
+                TiledDrawable drawable = TiledDrawable.create(data, targetWidth, targetHeight, cacheId, tiles,
+                        getTileExecutor(), config);
+                if (drawable != null) {
+                    decodeNanos += System.nanoTime() - decodeStart;
+                    cachedAt = System.nanoTime();
+                    memory.put(cacheId, drawable);
+                    dropPreview(memory);
+                    return true;
+                }
+                // a format the region decoder does not read, shown whole like any other image
+            }
+            // a mapped entry is decoded from its pages, never copied into the heap
+            Bitmap bitmap = BitmapDecoder.decode(data, targetWidth, targetHeight, pool, config);
+            decodeNanos += System.nanoTime() - decodeStart;
+            if (bitmap == null) {
+                return false;
+            }
+            cachedAt = System.nanoTime();
+            memory.put(cacheId, new BitmapDrawable(null, bitmap));
+            dropPreview(memory);
+            return true;
+        }
+
+        /**
+         * The full image is in, a preview put during the download would only take a second slot, a view still
+         * showing it keeps its bitmap out of the pool until it switches
+         */
+        private void dropPreview(ImageCache memory) {
+            if (previewCached) {
+                previewCached = false;
+                memory.remove(previewIdFor(cacheId));
+            }
+        }
 
+        /**
+         * Serves the size from a larger decode of the same image already in memory, no disk read or decode
+         *
+         * @return true when the scaled variant is in the cache
+         */
+        private boolean scaleLargerVariant() {
+            ImageCache memory = memoryTier;
+            String largerId = memory != null && cacheId != null ? memory.findLargerVariant(cacheId) : null;
+            if (largerId == null) {
+                return false;
+            }
+            BitmapPool pool = memory.getBitmapPool();
+            // held like a displayed bitmap from the lookup on so an eviction meanwhile cannot hand it to another decode
+            Drawable larger = pool != null ? pool.getAndMarkDisplayed(memory, largerId) : memory.get(largerId);
+            if (!(larger instanceof BitmapDrawable) || ((BitmapDrawable) larger).getBitmap() == null) {
+                return false;
+            }
+            Bitmap source = ((BitmapDrawable) larger).getBitmap();
+            try {
+                long decodeStart = System.nanoTime();
+                Bitmap scaled = BitmapDecoder.scaleDown(source, targetWidth, targetHeight);
+                decodeNanos += System.nanoTime() - decodeStart;
+                if (scaled == null || cancelled) {
+                    return false;
+                }
+                cachedAt = System.nanoTime();
+                memory.put(cacheId, new BitmapDrawable(null, scaled));
+                return true;
             } finally {
-                if (connection != null) {
-                    connection.disconnect();
+                if (pool != null) {
+                    pool.markHidden(source);
                 }
             }
         }
+
+        /**
+         * Keeps stored bytes in the encoded tier too unless they are mapped, those are already a page cache hit
+         */
+        private void hold(EncodedMemoryCache encoded, ImageStore.Entry stored, CacheHeaders headers) {
+            if (!stored.isMapped()) {
+                hold(encoded, stored.toByteArray(), headers);
+            }
+        }
+
+        private void hold(EncodedMemoryCache encoded, byte[] data, CacheHeaders headers) {
+            if (encoded != null && (headers == null || headers.isStorable())) {
+                encoded.put(requestUrl, data, headers);
+            }
+        }
+
+        private void store(ImageStore disk, Response response) {
+            // the disk tier keeps the bytes under the url they came from, an original can be decoded to any size
+            if (disk != null && response.headers.isStorable()) {
+                disk.put(requestUrl, response.data, response.headers);
+            }
+        }
+    }
+
+    private static class Response {
+        private final byte[] data;
+        private final CacheHeaders headers;
+        private final boolean notModified;
+
+        Response(byte[] data, CacheHeaders headers, boolean notModified) {
+            this.data = data;
+            this.headers = headers;
+            this.notModified = notModified;
+        }
     }
 
 }
@@ -0,0 +1,30 @@
+package com.davidparry.widgets;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public interface UrlResolver {
+
+    /**
+     * Url to download an image from for the size it is decoded at, the cache id stays the one of the
+     * logical url so every view of the image shares its memory entries
+     *
+     * @param url    - the url the view was given
+     * @param width  - target width in pixels, 0 when unbounded
+     * @param height - target height in pixels, 0 when unbounded
+     * @return the url to request, the given one to download the original
+     */
+    String resolve(String url, int width, int height);
+}
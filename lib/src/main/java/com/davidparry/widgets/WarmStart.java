@@ -0,0 +1,341 @@
+package com.davidparry.widgets;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Process;
+import android.util.Log;
+import com.davidparry.widgets.util.BitmapDecoder;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
+import com.davidparry.widgets.util.OpaqueDetector;
+import com.davidparry.widgets.util.Streams;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class WarmStart implements ComponentCallbacks2 {
+    public static final int DEFAULT_SNAPSHOT_SIZE = 48;
+    private static final String TAG = "WarmStart";
+    private static final String MAGIC = "davidwidgets.hotset.1";
+    // ids counted at once, past this every count is halved so old favorites fade
+    private static final int MAX_TRACKED = 512;
+    private static final long SAVE_INTERVAL = 60 * 1000L;
+
+    private final File file;
+    private final Executor background;
+    private final int snapshotSize;
+    // cache id -> how often it was displayed, decayed by halving
+    private final Map<String, Hot> counts = new HashMap<>();
+    private final long createdAt = System.nanoTime();
+    private long lastSaved = System.currentTimeMillis();
+    private boolean dirty;
+    private volatile long firstImageNanos = -1;
+    private volatile int preloaded;
+    private volatile long preloadNanos;
+
+    public WarmStart(File file, Executor background) {
+        this(file, background, DEFAULT_SNAPSHOT_SIZE);
+    }
+
+    /**
+     * Keeps a count of what is displayed and now and then writes the hottest cache ids to a small file, the
+     * next cold start decodes them from the disk tier before the screens that show them ask
+     *
+     * @param background   - runs the snapshot writes off the main thread
+     * @param snapshotSize - number of ids kept in the snapshot and preloaded
+     */
+    public WarmStart(File file, Executor background, int snapshotSize) {
+        this.file = file;
+        this.background = background;
+        this.snapshotSize = snapshotSize;
+    }
+
+    /**
+     * Counts a display of the image at the size it was decoded for, call on the main thread
+     */
+    public void recordDisplayed(String url, int width, int height) {
+        if (firstImageNanos < 0) {
+            firstImageNanos = System.nanoTime() - createdAt;
+        }
+        if (url == null) {
+            return;
+        }
+        boolean save;
+        synchronized (this) {
+            String id = ThreadLoadingImageView.cacheIdFor(url, width, height);
+            Hot hot = counts.get(id);
+            if (hot == null) {
+                if (counts.size() >= MAX_TRACKED) {
+                    decay();
+                }
+                hot = new Hot(url, width, height, 0);
+                counts.put(id, hot);
+            }
+            hot.count++;
+            dirty = true;
+            long now = System.currentTimeMillis();
+            save = now - lastSaved >= SAVE_INTERVAL;
+            if (save) {
+                lastSaved = now;
+            }
+        }
+        if (save) {
+            saveLater();
+        }
+    }
+
+    /**
+     * Writes the snapshot when anything changed since the last one, do not call from the main thread
+     */
+    public void save() {
+        List<Hot> hottest;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            hottest = hottest();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp));
+            writer.write(MAGIC);
+            writer.write('\n');
+            for (Hot hot : hottest) {
+                writer.write(hot.count + " " + hot.width + " " + hot.height + " " + hot.url + '\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (IOException er) {
+            Log.e(TAG, "Unable to write the hot set snapshot", er);
+            tmp.delete();
+        } finally {
+            Streams.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Reads the last snapshot back into the counts, halved so what is no longer shown fades over launches
+     *
+     * @return the number of ids read
+     */
+    public int load() {
+        if (!file.exists()) {
+            return 0;
+        }
+        BufferedReader reader = null;
+        int read = 0;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            if (!MAGIC.equals(reader.readLine())) {
+                return 0;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // the url is last, it is the one part that may contain a space
+                String[] parts = line.split(" ", 4);
+                if (parts.length < 4) {
+                    continue;
+                }
+                Hot hot = new Hot(parts[3], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                        Math.max(1, Integer.parseInt(parts[0]) / 2));
+                synchronized (this) {
+                    String id = ThreadLoadingImageView.cacheIdFor(hot.url, hot.width, hot.height);
+                    if (!counts.containsKey(id)) {
+                        counts.put(id, hot);
+                    }
+                }
+                read++;
+            }
+        } catch (IOException | NumberFormatException er) {
+            Log.e(TAG, "Hot set snapshot is corrupt, keeping what was read", er);
+        } finally {
+            Streams.closeQuietly(reader);
+        }
+        return read;
+    }
+
+    /**
+     * Loads the snapshot and decodes its images from the disk tier into memory, hottest first. An image the
+     * disk no longer has is skipped, this never goes to the network. Do not call from the main thread.
+     *
+     * @param opaqueConfig - pixel format for images without transparency, null for the default
+     * @return the number of images put in the memory cache
+     */
+    public int preload(ImageCache memory, ImageStore disk, Bitmap.Config opaqueConfig) {
+        long start = System.nanoTime();
+        load();
+        List<Hot> hottest;
+        synchronized (this) {
+            hottest = hottest();
+        }
+        int count = 0;
+        for (Hot hot : hottest) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            String id = ThreadLoadingImageView.cacheIdFor(hot.url, hot.width, hot.height);
+            if (memory.get(id) != null) {
+                // a view bound to it first
+                continue;
+            }
+            String requestUrl = ThreadLoadingImageView.requestUrlFor(hot.url, hot.width, hot.height,
+                    ThreadLoadingImageView.getDefaultUrlResolver());
+            ImageStore.Entry stored = disk != null ? disk.getEntry(requestUrl) : null;
+            if (stored == null) {
+                continue;
+            }
+            Bitmap.Config config = opaqueConfig != null && OpaqueDetector.isOpaque(stored.data, null) ? opaqueConfig : null;
+            Bitmap bitmap = BitmapDecoder.decode(stored.data, hot.width, hot.height, memory.getBitmapPool(), config);
+            if (bitmap != null && memory.get(id) == null) {
+                memory.put(id, new BitmapDrawable(null, bitmap));
+                count++;
+            }
+        }
+        preloaded = count;
+        preloadNanos = System.nanoTime() - start;
+        return count;
+    }
+
+    /**
+     * Runs {@link #preload} on a thread of its own below the loader threads, loads for views come first
+     */
+    public void preloadAsync(final ImageCache memory, final ImageStore disk, final Bitmap.Config opaqueConfig) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                try {
+                    preload(memory, disk, opaqueConfig);
+                } catch (RuntimeException er) {
+                    Log.e(TAG, "Error preloading the hot set", er);
+                }
+            }
+        }, "ImageWarmStart");
+        thread.start();
+    }
+
+    /**
+     * @return time from this being created, with the caches, to the first image displayed, -1 until then.
+     * Compare it with preloading turned off to see what the warm start saves.
+     */
+    public long getTimeToFirstImageNanos() {
+        return firstImageNanos;
+    }
+
+    /**
+     * @return images the last preload put in memory
+     */
+    public int getPreloadedCount() {
+        return preloaded;
+    }
+
+    public long getPreloadNanos() {
+        return preloadNanos;
+    }
+
+    /**
+     * The app went to the background, the likely last chance to write the snapshot
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            synchronized (this) {
+                lastSaved = System.currentTimeMillis();
+            }
+            saveLater();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void saveLater() {
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private void decay() {
+        Iterator<Hot> it = counts.values().iterator();
+        while (it.hasNext()) {
+            Hot hot = it.next();
+            hot.count /= 2;
+            if (hot.count == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    private List<Hot> hottest() {
+        List<Hot> sorted = new ArrayList<>(counts.values());
+        Collections.sort(sorted, new Comparator<Hot>() {
+            @Override
+            public int compare(Hot lhs, Hot rhs) {
+                return lhs.count == rhs.count ? 0 : lhs.count > rhs.count ? -1 : 1;
+            }
+        });
+        List<Hot> hottest = new ArrayList<>(Math.min(sorted.size(), snapshotSize));
+        for (int i = 0; i < sorted.size() && i < snapshotSize; i++) {
+            Hot hot = sorted.get(i);
+            hottest.add(new Hot(hot.url, hot.width, hot.height, hot.count));
+        }
+        return hottest;
+    }
+
+    private static class Hot {
+        private final String url;
+        private final int width;
+        private final int height;
+        private int count;
+
+        Hot(String url, int width, int height, int count) {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.davidparry.widgets.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class BitmapDecoder {
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodes the image no larger than needed for the requested size, a request of 0 leaves that side unbounded
+     *
+     * @param data      - the encoded image
+     * @param reqWidth  - target width in pixels
+     * @param reqHeight - target height in pixels
+     * @return the decoded bitmap or null when the bytes are not an image
+     */
+    public static Bitmap decode(byte[] data, int reqWidth, int reqHeight) {
+        return decode(data, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int)} but decodes into a pooled bitmap when one fits
+     *
+     * @param pool - where to look for a bitmap to reuse, may be null
+     */
+    public static Bitmap decode(byte[] data, int reqWidth, int reqHeight, BitmapPool pool) {
+        return decode(data, reqWidth, reqHeight, pool, null);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, BitmapPool)} in the given pixel format
+     *
+     * @param config - RGB_565 halves the memory of an opaque image, null for the default ARGB_8888
+     */
+    public static Bitmap decode(byte[] data, int reqWidth, int reqHeight, BitmapPool pool, Bitmap.Config config) {
+        return decode(data, null, reqWidth, reqHeight, pool, config);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, BitmapPool, Bitmap.Config)} from the remaining bytes of a buffer,
+     * a mapped buffer is streamed to the decoder from its pages without first being copied into the heap
+     */
+    public static Bitmap decode(ByteBuffer data, int reqWidth, int reqHeight, BitmapPool pool, Bitmap.Config config) {
+        byte[] array = wholeArray(data);
+        return decode(array, array == null ? data : null, reqWidth, reqHeight, pool, config);
+    }
+
+    private static Bitmap decode(byte[] data, ByteBuffer buffer, int reqWidth, int reqHeight, BitmapPool pool,
+                                 Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (config != null) {
+            options.inPreferredConfig = config;
+            // smooths the banding of photos squeezed into 16 bits on versions that still honor it
+            options.inDither = config == Bitmap.Config.RGB_565;
+        }
+        options.inJustDecodeBounds = true;
+        decode(data, buffer, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        // pooled bitmaps have to be mutable to be handed back as inBitmap later
+        options.inMutable = true;
+        if (pool != null) {
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = pool.get(width, height, options.inPreferredConfig, options.inSampleSize);
+        }
+        try {
+            return decode(data, buffer, options);
+        } catch (IllegalArgumentException er) {
+            // the pooled bitmap did not fit after all, decode into a fresh one
+            options.inBitmap = null;
+            return decode(data, buffer, options);
+        }
+    }
+
+    /**
+     * @return the array behind the buffer when the buffer covers all of it, null otherwise
+     */
+    private static byte[] wholeArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        return null;
+    }
+
+    private static Bitmap decode(byte[] data, ByteBuffer buffer, BitmapFactory.Options options) {
+        if (data != null) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(buffer), null, options);
+    }
+
+    /**
+     * Scales a decoded bitmap down the way {@link #decode(byte[], int, int)} would size it, keeping the aspect
+     * ratio and both sides at or above the requested size. The result is always a new bitmap so each cache
+     * entry owns its own.
+     *
+     * @return the scaled copy or null when it could not be allocated
+     */
+    public static Bitmap scaleDown(Bitmap source, int reqWidth, int reqHeight) {
+        float scale = 1f;
+        if (reqWidth > 0 || reqHeight > 0) {
+            float scaleX = reqWidth > 0 ? (float) reqWidth / source.getWidth() : 0f;
+            float scaleY = reqHeight > 0 ? (float) reqHeight / source.getHeight() : 0f;
+            scale = Math.min(1f, Math.max(scaleX, scaleY));
+        }
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        try {
+            if (width == source.getWidth() && height == source.getHeight()) {
+                return source.copy(config, true);
+            }
+            return Bitmap.createScaledBitmap(source, width, height, true);
+        } catch (OutOfMemoryError er) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads only the header, true when the bytes are an image BitmapFactory can decode
+     */
+    public static boolean isImage(byte[] data) {
+        return isImage(data, null);
+    }
+
+    public static boolean isImage(ByteBuffer data) {
+        byte[] array = wholeArray(data);
+        return isImage(array, array == null ? data : null);
+    }
+
+    private static boolean isImage(byte[] data, ByteBuffer buffer) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(data, buffer, options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    /**
+     * Largest power of two that keeps both sides at or above the requested size
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            return inSampleSize;
+        }
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        while ((reqWidth <= 0 || halfWidth / inSampleSize >= reqWidth)
+                && (reqHeight <= 0 || halfHeight / inSampleSize >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
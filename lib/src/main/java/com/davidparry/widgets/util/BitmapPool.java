@@ -0,0 +1,241 @@
+package com.davidparry.widgets.util;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class BitmapPool {
+    // never hand out a bitmap more than this many times the needed size, it would pin memory for nothing
+    private static final int MAX_OVERSIZE = 4;
+
+    private final long initialBytes;
+    private long maxBytes;
+    // byte size bucket -> bitmaps of that size, the oldest first
+    private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<>();
+    // every pooled bitmap in insertion order, used to drop the oldest when over budget
+    private final LinkedHashSet<Bitmap> order = new LinkedHashSet<>();
+    // bitmaps currently shown by a view, weak so a view that goes away does not pin them
+    private final WeakHashMap<Bitmap, Integer> displayed = new WeakHashMap<>();
+    // evicted from the cache while still on screen, pooled once the last view lets go
+    private final WeakHashMap<Bitmap, Boolean> pending = new WeakHashMap<>();
+    private long size;
+    private int hits;
+    private int misses;
+    private int puts;
+
+    public BitmapPool(long maxBytes) {
+        this.initialBytes = maxBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A bitmap that can be passed as inBitmap to decode an image of the given size or null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config, int inSampleSize) {
+        int needed = width * height * bytesPerPixel(config);
+        Bitmap found = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Map.Entry<Integer, LinkedList<Bitmap>> entry = buckets.ceilingEntry(needed);
+            if (entry != null && entry.getKey() <= needed * MAX_OVERSIZE) {
+                found = entry.getValue().peekFirst();
+            }
+        } else if (inSampleSize == 1) {
+            // before KitKat inBitmap needs the exact same dimensions and no sampling
+            LinkedList<Bitmap> bucket = buckets.get(needed);
+            if (bucket != null) {
+                for (Bitmap bitmap : bucket) {
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                        found = bitmap;
+                        break;
+                    }
+                }
+            }
+        }
+        if (found == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        remove(found);
+        return found;
+    }
+
+    /**
+     * Offers a bitmap that left the cache, it is held back while any view still displays it
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() || order.contains(bitmap)) {
+            return;
+        }
+        if (displayed.containsKey(bitmap)) {
+            pending.put(bitmap, Boolean.TRUE);
+            return;
+        }
+        int bytes = byteCount(bitmap);
+        if (bytes > maxBytes) {
+            return;
+        }
+        LinkedList<Bitmap> bucket = buckets.get(bytes);
+        if (bucket == null) {
+            bucket = new LinkedList<>();
+            buckets.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        order.add(bitmap);
+        size += bytes;
+        puts++;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Looks the id up and marks its bitmap displayed in one step. A cache removes an entry before it offers the
+     * bitmap here, so one evicted between a plain get and {@link #markDisplayed(Bitmap)} could be handed to a
+     * decode as inBitmap while a view is about to show it. Balance with {@link #markHidden(Bitmap)}.
+     *
+     * @return the cached drawable or null
+     */
+    public synchronized Drawable getAndMarkDisplayed(ImageCache cache, String id) {
+        Drawable drawable = cache.get(id);
+        if (drawable instanceof BitmapDrawable) {
+            markDisplayed(((BitmapDrawable) drawable).getBitmap());
+        }
+        return drawable;
+    }
+
+    public synchronized void markDisplayed(Bitmap bitmap) {
+        if (bitmap != null) {
+            Integer count = displayed.get(bitmap);
+            displayed.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    public synchronized void markHidden(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        Integer count = displayed.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            displayed.put(bitmap, count - 1);
+            return;
+        }
+        displayed.remove(bitmap);
+        if (pending.remove(bitmap) != null) {
+            put(bitmap);
+        }
+    }
+
+    public synchronized void trimToSize(long max) {
+        Iterator<Bitmap> it = order.iterator();
+        while (size > max && it.hasNext()) {
+            Bitmap eldest = it.next();
+            it.remove();
+            removeFromBucket(eldest);
+        }
+    }
+
+    /**
+     * Sets the budget to a share of the one the pool was created with and trims to it, puts stay within it
+     * until it is raised again
+     */
+    public synchronized void trimToFraction(float fraction) {
+        maxBytes = (long) (initialBytes * Math.max(0f, Math.min(fraction, 1f)));
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+        pending.clear();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long maxSize() {
+        return maxBytes;
+    }
+
+    public synchronized int hitCount() {
+        return hits;
+    }
+
+    public synchronized int missCount() {
+        return misses;
+    }
+
+    public synchronized int putCount() {
+        return puts;
+    }
+
+    private void remove(Bitmap bitmap) {
+        order.remove(bitmap);
+        removeFromBucket(bitmap);
+    }
+
+    private void removeFromBucket(Bitmap bitmap) {
+        int bytes = byteCount(bitmap);
+        LinkedList<Bitmap> bucket = buckets.get(bytes);
+        if (bucket != null && bucket.remove(bitmap)) {
+            size -= bytes;
+            if (bucket.isEmpty()) {
+                buckets.remove(bytes);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static int byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    public static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{" +
+                "size=" + size +
+                ", maxBytes=" + maxBytes +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", puts=" + puts +
+                '}';
+    }
+}
@@ -0,0 +1,156 @@
+package com.davidparry.widgets.util;
+
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class CacheHeaders {
+    // how long a response without any freshness information is used before it is revalidated
+    public static final long DEFAULT_FRESHNESS = 24 * 60 * 60 * 1000L;
+
+    private final String etag;
+    private final String lastModified;
+    private final long expiresAt;
+    private final boolean storable;
+
+    public CacheHeaders(String etag, String lastModified, long expiresAt) {
+        this(etag, lastModified, expiresAt, true);
+    }
+
+    private CacheHeaders(String etag, String lastModified, long expiresAt, boolean storable) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+        this.storable = storable;
+    }
+
+    /**
+     * Reads validators and freshness from a response, Cache-Control max-age wins over Expires which wins over
+     * the usual 10% of the Last-Modified age heuristic
+     */
+    public static CacheHeaders fromResponse(HttpURLConnection connection, long now) {
+        return fromHeaders(connection.getHeaderField("Cache-Control"), connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"), connection.getDate(), connection.getExpiration(),
+                connection.getLastModified(), now);
+    }
+
+    /**
+     * Same as {@link #fromResponse(HttpURLConnection, long)} for a client other than HttpURLConnection
+     *
+     * @param date       - the Date header in milliseconds, 0 when missing
+     * @param expiration - the Expires header in milliseconds, 0 when missing
+     * @param modified   - the Last-Modified header in milliseconds, 0 when missing
+     */
+    public static CacheHeaders fromHeaders(String cacheControl, String etag, String lastModified, long date,
+                                           long expiration, long modified, long now) {
+        boolean noStore = false;
+        boolean noCache = false;
+        long maxAge = -1;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    noStore = true;
+                } else if (directive.equals("no-cache")) {
+                    noCache = true;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                    } catch (NumberFormatException er) {
+                        // ignore a malformed max-age and fall back to the other headers
+                    }
+                }
+            }
+        }
+        long expiresAt;
+        if (noCache) {
+            expiresAt = now;
+        } else if (maxAge >= 0) {
+            expiresAt = now + maxAge * 1000;
+        } else if (expiration > 0) {
+            // measure against the server's clock so a skewed device clock does not matter
+            expiresAt = now + (expiration - (date > 0 ? date : now));
+        } else if (modified > 0) {
+            long age = (date > 0 ? date : now) - modified;
+            expiresAt = now + Math.min(Math.max(age / 10, 0), DEFAULT_FRESHNESS);
+        } else {
+            expiresAt = now + DEFAULT_FRESHNESS;
+        }
+        return new CacheHeaders(etag, lastModified, expiresAt, !noStore);
+    }
+
+    /**
+     * Freshness from a 304, validators the server left out are carried over from the stored entry
+     */
+    public CacheHeaders revalidated(HttpURLConnection connection, long now) {
+        return revalidated(fromResponse(connection, now));
+    }
+
+    /**
+     * @param fresh - read from the 304 with {@link #fromHeaders}
+     */
+    public CacheHeaders revalidated(CacheHeaders fresh) {
+        return new CacheHeaders(fresh.etag != null ? fresh.etag : etag,
+                fresh.lastModified != null ? fresh.lastModified : lastModified,
+                fresh.expiresAt, fresh.storable);
+    }
+
+    /**
+     * Adds If-None-Match and If-Modified-Since so an unchanged image comes back as a bodiless 304
+     */
+    public void applyValidators(HttpURLConnection connection) {
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    public boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    public boolean isStorable() {
+        return storable;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheHeaders{" +
+                "etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
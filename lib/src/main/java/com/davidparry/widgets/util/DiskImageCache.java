@@ -0,0 +1,406 @@
+package com.davidparry.widgets.util;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class DiskImageCache implements ImageStore {
+    private static final String TAG = "DiskImageCache";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String MAGIC = "davidwidgets.diskcache.1";
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String DEL = "DEL";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String NONE = "-";
+
+    private final File directory;
+    private final long maxBytes;
+    // file name -> size and http headers in access order, the eldest entry is evicted first
+    private final LinkedHashMap<String, Meta> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private int journalOps;
+    private Writer journal;
+    private boolean opened;
+
+    public DiskImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Encoded bytes stored for the id or null when missing, do not call from the main thread
+     */
+    public byte[] get(String id) {
+        Entry entry = getEntry(id);
+        return entry != null ? entry.toByteArray() : null;
+    }
+
+    @Override
+    public Entry getEntry(String id) {
+        String name = fileName(id);
+        Meta meta;
+        synchronized (this) {
+            meta = open() ? entries.get(name) : null;
+            if (meta == null) {
+                return null;
+            }
+            record(GET, name, null);
+        }
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(new File(directory, name));
+            return new Entry(ByteBuffer.wrap(Streams.readFully(input)), meta.headers);
+        } catch (IOException er) {
+            // evicted between the lookup and the read, treat as a miss
+            remove(id);
+            return null;
+        } finally {
+            Streams.closeQuietly(input);
+        }
+    }
+
+    @Override
+    public synchronized boolean isFresh(String id, long now) {
+        Meta meta = open() ? entries.get(fileName(id)) : null;
+        return meta != null && (meta.headers == null || meta.headers.isFresh(now));
+    }
+
+    /**
+     * Writes to a temp file and renames it into place so a crash never leaves a partial entry behind,
+     * do not call from the main thread
+     */
+    public void put(String id, byte[] data) {
+        put(id, data, null);
+    }
+
+    /**
+     * Same as {@link #put(String, byte[])} keeping the validators and freshness of the response
+     */
+    @Override
+    public void put(String id, byte[] data, CacheHeaders headers) {
+        if (data == null || data.length > maxBytes) {
+            return;
+        }
+        String name = fileName(id);
+        File tmp = null;
+        FileOutputStream out = null;
+        try {
+            // open before writing the temp file, opening sweeps files the journal does not know about
+            synchronized (this) {
+                if (!open()) {
+                    return;
+                }
+            }
+            tmp = File.createTempFile(name, TMP_SUFFIX, directory);
+            out = new FileOutputStream(tmp);
+            out.write(data);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            synchronized (this) {
+                File target = new File(directory, name);
+                if (!tmp.renameTo(target)) {
+                    return;
+                }
+                tmp = null;
+                Meta meta = new Meta(data.length, headers);
+                Meta old = entries.put(name, meta);
+                if (old != null) {
+                    size -= old.size;
+                }
+                size += data.length;
+                record(PUT, name, meta);
+                trimToSize(maxBytes);
+            }
+        } catch (IOException er) {
+            Log.e(TAG, "Error writing disk cache entry", er);
+        } finally {
+            Streams.closeQuietly(out);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void updateHeaders(String id, CacheHeaders headers) {
+        String name = fileName(id);
+        Meta old = open() ? entries.get(name) : null;
+        if (old != null) {
+            Meta meta = new Meta(old.size, headers);
+            entries.put(name, meta);
+            record(PUT, name, meta);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        if (open()) {
+            delete(fileName(id));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (open()) {
+            trimToSize(0);
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public long maxSize() {
+        return maxBytes;
+    }
+
+    private void trimToSize(long max) {
+        Iterator<Map.Entry<String, Meta>> it = entries.entrySet().iterator();
+        while (size > max && it.hasNext()) {
+            Map.Entry<String, Meta> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue().size;
+            new File(directory, eldest.getKey()).delete();
+            record(DEL, eldest.getKey(), null);
+        }
+    }
+
+    private void delete(String name) {
+        Meta old = entries.remove(name);
+        if (old != null) {
+            size -= old.size;
+            new File(directory, name).delete();
+            record(DEL, name, null);
+        }
+    }
+
+    /**
+     * Lazily replays the journal on first use so the cost lands on a loader thread, not on view inflation
+     */
+    private boolean open() {
+        if (opened) {
+            return journal != null;
+        }
+        opened = true;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create disk cache directory " + directory);
+            return false;
+        }
+        readJournal();
+        removeOrphans();
+        try {
+            rebuildJournal();
+        } catch (IOException er) {
+            Log.e(TAG, "Unable to write disk cache journal", er);
+            journal = null;
+        }
+        trimToSize(maxBytes);
+        return journal != null;
+    }
+
+    private void readJournal() {
+        File file = new File(directory, JOURNAL);
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            if (!MAGIC.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length < 2) {
+                    // torn last line after a crash
+                    continue;
+                }
+                String name = parts[1];
+                if (PUT.equals(parts[0]) && parts.length >= 3) {
+                    Meta meta = new Meta(Long.parseLong(parts[2]), parts.length == 6 ? parseHeaders(parts) : null);
+                    Meta old = entries.put(name, meta);
+                    if (old != null) {
+                        size -= old.size;
+                    }
+                    size += meta.size;
+                } else if (GET.equals(parts[0])) {
+                    entries.get(name);
+                } else if (DEL.equals(parts[0])) {
+                    Meta old = entries.remove(name);
+                    if (old != null) {
+                        size -= old.size;
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException er) {
+            Log.e(TAG, "Disk cache journal is corrupt, keeping what was read", er);
+        } finally {
+            Streams.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Drops journal entries whose file is gone and files the journal never committed
+     */
+    private void removeOrphans() {
+        Iterator<Map.Entry<String, Meta>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Meta> entry = it.next();
+            File file = new File(directory, entry.getKey());
+            if (!file.exists() || file.length() != entry.getValue().size) {
+                size -= entry.getValue().size;
+                it.remove();
+                file.delete();
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!JOURNAL.equals(name) && !entries.containsKey(name)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void rebuildJournal() throws IOException {
+        Streams.closeQuietly(journal);
+        File tmp = new File(directory, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new FileWriter(tmp));
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            // oldest first so replaying restores the access order
+            for (Map.Entry<String, Meta> entry : entries.entrySet()) {
+                writer.write(line(PUT, entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(directory, JOURNAL))) {
+            throw new IOException("Unable to rename " + tmp);
+        }
+        journal = new BufferedWriter(new FileWriter(new File(directory, JOURNAL), true));
+        journalOps = 0;
+    }
+
+    private void record(String op, String name, Meta meta) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.write(line(op, name, meta));
+            journal.flush();
+            journalOps++;
+            if (journalOps > 2000 && journalOps > entries.size() * 2) {
+                rebuildJournal();
+            }
+        } catch (IOException er) {
+            Log.e(TAG, "Error writing disk cache journal", er);
+        }
+    }
+
+    /**
+     * PUT name size expiresAt etag lastModified, header values are url encoded so they never contain a space
+     */
+    private static String line(String op, String name, Meta meta) {
+        if (meta == null) {
+            return op + ' ' + name + '\n';
+        }
+        StringBuilder builder = new StringBuilder(op).append(' ').append(name).append(' ').append(meta.size);
+        if (meta.headers != null) {
+            builder.append(' ').append(meta.headers.getExpiresAt())
+                    .append(' ').append(encode(meta.headers.getEtag()))
+                    .append(' ').append(encode(meta.headers.getLastModified()));
+        }
+        return builder.append('\n').toString();
+    }
+
+    private static CacheHeaders parseHeaders(String[] parts) {
+        return new CacheHeaders(decode(parts[4]), decode(parts[5]), Long.parseLong(parts[3]));
+    }
+
+    private static String encode(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException er) {
+            return NONE;
+        }
+    }
+
+    private static String decode(String value) {
+        if (NONE.equals(value)) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (IOException | IllegalArgumentException er) {
+            return null;
+        }
+    }
+
+    static String fileName(String id) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(id.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (Exception er) {
+            return String.valueOf(id.hashCode() & 0x7fffffff);
+        }
+    }
+
+    private static class Meta {
+        private final long size;
+        private final CacheHeaders headers;
+
+        Meta(long size, CacheHeaders headers) {
+            this.size = size;
+            this.headers = headers;
+        }
+    }
+}
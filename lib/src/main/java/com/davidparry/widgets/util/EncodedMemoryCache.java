@@ -0,0 +1,166 @@
+package com.davidparry.widgets.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class EncodedMemoryCache {
+    private final LinkedHashMap<String, Slot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long initialBytes;
+    private final boolean direct;
+    private long maxBytes;
+    private long size;
+    private int hitCount;
+    private int missCount;
+
+    public EncodedMemoryCache(long maxBytes) {
+        this(maxBytes, false);
+    }
+
+    /**
+     * @param maxBytes - budget for the encoded bytes of all entries
+     * @param direct   - keep the bytes in direct buffers. On ART those are non-movable arrays that still count
+     *                 against the heap, only a vm that allocates them natively keeps them off it
+     */
+    public EncodedMemoryCache(long maxBytes, boolean direct) {
+        this.initialBytes = maxBytes;
+        this.maxBytes = maxBytes;
+        this.direct = direct;
+    }
+
+    /**
+     * @return a read only view of the bytes stored under the id, with its own position and no copy, null when
+     * missing
+     */
+    public Entry get(String id) {
+        ByteBuffer buffer;
+        CacheHeaders headers;
+        synchronized (this) {
+            Slot slot = entries.get(id);
+            if (slot == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            buffer = slot.buffer.asReadOnlyBuffer();
+            headers = slot.headers;
+        }
+        return new Entry(buffer, headers);
+    }
+
+    /**
+     * @param headers - freshness the bytes came with, null when they never go stale
+     */
+    public void put(String id, byte[] data, CacheHeaders headers) {
+        if (id == null || data == null || data.length > maxSize()) {
+            return;
+        }
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        buffer.put(data);
+        buffer.flip();
+        synchronized (this) {
+            Slot previous = entries.put(id, new Slot(buffer, headers));
+            if (previous != null) {
+                size -= previous.buffer.capacity();
+            }
+            size += data.length;
+            trimToSize(maxBytes);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Slot previous = entries.remove(id);
+        if (previous != null) {
+            size -= previous.buffer.capacity();
+        }
+    }
+
+    /**
+     * Drops least recently used entries until the bytes held are at or under the size
+     */
+    public synchronized void trimToSize(long max) {
+        Iterator<Map.Entry<String, Slot>> it = entries.entrySet().iterator();
+        while (size > max && it.hasNext()) {
+            size -= it.next().getValue().buffer.capacity();
+            it.remove();
+        }
+    }
+
+    /**
+     * Sets the budget to a share of the one the cache was created with and trims to it, puts stay within it
+     * until it is raised again
+     */
+    public synchronized void trimToFraction(float fraction) {
+        maxBytes = (long) (initialBytes * Math.max(0f, Math.min(fraction, 1f)));
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long maxSize() {
+        return maxBytes;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EncodedMemoryCache{" +
+                "entries=" + entries.size() +
+                ", size=" + size +
+                ", maxSize=" + maxBytes +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                '}';
+    }
+
+    public static class Entry {
+        // read only, decode it as a buffer rather than copying it out
+        public final ByteBuffer data;
+        // null when the bytes never go stale
+        public final CacheHeaders headers;
+
+        Entry(ByteBuffer data, CacheHeaders headers) {
+            this.data = data;
+            this.headers = headers;
+        }
+    }
+
+    private static class Slot {
+        private final ByteBuffer buffer;
+        private final CacheHeaders headers;
+
+        Slot(ByteBuffer buffer, CacheHeaders headers) {
+            this.buffer = buffer;
+            this.headers = headers;
+        }
+    }
+}
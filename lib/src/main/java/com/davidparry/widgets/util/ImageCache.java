@@ -24,7 +24,37 @@ public interface ImageCache {
 
     void put(String id, Drawable bitmap);
 
+    /**
+     * Drops the entry, its bitmap goes to the pool as an evicted one would
+     */
+    void remove(String id);
+
     void clear();
 
     void registerListener(MemoryCache.Listener listener);
+
+    void unregisterListener(MemoryCache.Listener listener);
+
+    /**
+     * Wakes the listeners waiting on the id although nothing was put, they find the id missing and can tell
+     * the load failed
+     */
+    void notifyFailed(String id);
+
+    /**
+     * @return the pool evicted bitmaps are handed to for reuse, null when the cache does not keep one
+     */
+    BitmapPool getBitmapPool();
+
+    /**
+     * @return id of a cached decode of the same source at least as large as the id asks for, null when none is
+     * cached, the bitmap under it can be scaled down instead of decoding again
+     */
+    String findLargerVariant(String id);
+
+    /**
+     * Sets the budget to a share of the one the cache was created with, entries over it are evicted right away
+     * and handed to the bitmap pool. 1 restores the full budget.
+     */
+    void trimToFraction(float fraction);
 }
@@ -21,15 +21,104 @@ import android.util.LruCache;
  */
 public class ImageLruCache extends LruCache<String, Drawable> {
 
+    private final BitmapPool pool;
+    private final VariantIndex variants = new VariantIndex();
+    // at most maxSize, lowered under memory pressure
+    private volatile int budget;
+
     public ImageLruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    public ImageLruCache(int maxSize, BitmapPool pool) {
         super(maxSize);
+        this.pool = pool;
+        this.budget = maxSize;
+    }
+
+    /**
+     * @see ImageCache#findLargerVariant(String)
+     */
+    public String findLargerVariant(String id) {
+        return variants.findLarger(id);
+    }
+
+    /**
+     * Puts the drawable and indexes its id by source and size for {@link #findLargerVariant(String)}
+     */
+    public Drawable putVariant(String key, Drawable value) {
+        // indexed first, an entry evicted by its own put is dropped again in entryRemoved
+        variants.add(key);
+        Drawable previous = put(key, value);
+        if (budget < maxSize()) {
+            // the entry just put stays for its listeners even over a trimmed budget, the next put evicts it
+            trimTo(budget, key);
+        }
+        return previous;
+    }
+
+    /**
+     * Lowers the size the cache is kept under, it never grows past the size it was created with
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(0, Math.min(budget, maxSize()));
+        trimTo(this.budget, null);
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is at or under the size, LruCache only exposes
+     * trimToSize from api 17
+     */
+    public void trimTo(int size) {
+        trimTo(size, null);
+    }
+
+    /**
+     * @param keep - key never evicted, may be null
+     */
+    private void trimTo(int size, String keep) {
+        if (size() <= size) {
+            return;
+        }
+        // the snapshot is ordered least recently used first
+        for (String key : snapshot().keySet()) {
+            if (size() <= size) {
+                break;
+            }
+            if (!key.equals(keep)) {
+                remove(key);
+            }
+        }
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Drawable oldValue, Drawable newValue) {
+        if (newValue == null) {
+            variants.remove(key);
+        }
+        if (oldValue != newValue && oldValue instanceof TiledDrawable) {
+            ((TiledDrawable) oldValue).evict();
+        }
+        if (pool != null && oldValue != newValue && oldValue instanceof BitmapDrawable) {
+            // the pool holds it back while a view is still showing it
+            pool.put(((BitmapDrawable) oldValue).getBitmap());
+        }
     }
 
     @Override
     protected int sizeOf(String key, Drawable value) {
         int kbOfBitmap = 200;
+        if (value instanceof TiledDrawable) {
+            return (((TiledDrawable) value).getByteCount() + 1023) / 1024;
+        }
         try {
-            kbOfBitmap = ((BitmapDrawable) value).getBitmap().getByteCount() / 1024;
+            // a reused bitmap can hold more memory than its current dimensions need
+            // rounded up, a small RGB_565 thumbnail must not count as free
+            kbOfBitmap = (BitmapPool.byteCount(((BitmapDrawable) value).getBitmap()) + 1023) / 1024;
         } catch (Exception er) {
             // should not have an error but dont crash for cache sake
         }
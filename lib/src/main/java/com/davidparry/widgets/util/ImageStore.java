@@ -0,0 +1,85 @@
+package com.davidparry.widgets.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public interface ImageStore {
+
+    /**
+     * Encoded bytes with the http headers they were stored with or null when missing, do not call from the
+     * main thread
+     */
+    Entry getEntry(String id);
+
+    /**
+     * True when the id is stored and its headers do not ask for a revalidation, reads no image bytes
+     */
+    boolean isFresh(String id, long now);
+
+    /**
+     * @param headers - validators and freshness from the response, null when there are none to keep
+     */
+    void put(String id, byte[] data, CacheHeaders headers);
+
+    /**
+     * Replaces the headers of a stored entry without touching its bytes, used after a 304
+     */
+    void updateHeaders(String id, CacheHeaders headers);
+
+    void remove(String id);
+
+    void clear();
+
+    long size();
+
+    long maxSize();
+
+    class Entry {
+        // positioned at the first byte of the image, never written to
+        public final ByteBuffer data;
+        // null when the bytes were stored without http headers, such entries never go stale
+        public final CacheHeaders headers;
+
+        public Entry(ByteBuffer data, CacheHeaders headers) {
+            this.data = data;
+            this.headers = headers;
+        }
+
+        public int length() {
+            return data.remaining();
+        }
+
+        /**
+         * True when the bytes are a view of a mapped file rather than a heap array
+         */
+        public boolean isMapped() {
+            return !data.hasArray();
+        }
+
+        /**
+         * The bytes as an array, a heap entry hands back its own array without copying
+         */
+        public byte[] toByteArray() {
+            if (data.hasArray() && data.arrayOffset() + data.position() == 0 && data.remaining() == data.array().length) {
+                return data.array();
+            }
+            byte[] copy = new byte[data.remaining()];
+            data.duplicate().get(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.davidparry.widgets.util;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class JpegPreview {
+    private static final int SOI = 0xD8;
+    private static final int SOS = 0xDA;
+    private static final int APP1 = 0xE1;
+    private static final int SOF_BASELINE = 0xC0;
+    private static final int SOF_PROGRESSIVE = 0xC2;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private JpegPreview() {
+    }
+
+    /**
+     * Finds the thumbnail a camera embeds in the exif block, it sits near the start of the file so the first
+     * kilobytes of a download are usually enough
+     *
+     * @param length - how many bytes of data have arrived
+     * @return the thumbnail jpeg or null when there is none or it has not fully arrived yet
+     */
+    public static byte[] exifThumbnail(byte[] data, int length) {
+        int app1 = findSegment(data, length, APP1);
+        if (app1 < 0 || app1 + 10 > length || data[app1 + 4] != 'E' || data[app1 + 5] != 'x'
+                || data[app1 + 6] != 'i' || data[app1 + 7] != 'f') {
+            return null;
+        }
+        int tiff = app1 + 10;
+        if (tiff + 8 > length) {
+            return null;
+        }
+        boolean little = data[tiff] == 'I';
+        // offsets are unsigned 32 bit, checked as longs so a crafted one cannot wrap to a negative index
+        long ifd0Offset = readInt(data, tiff + 4, little);
+        if (ifd0Offset <= 0 || tiff + ifd0Offset + 2 > length) {
+            return null;
+        }
+        int ifd0 = tiff + (int) ifd0Offset;
+        int entries = readShort(data, ifd0, little);
+        int next = ifd0 + 2 + entries * 12;
+        if (next + 4 > length) {
+            return null;
+        }
+        long ifd1Offset = readInt(data, next, little);
+        if (ifd1Offset <= 0 || tiff + ifd1Offset + 2 > length) {
+            return null;
+        }
+        int ifd1 = tiff + (int) ifd1Offset;
+        int count = readShort(data, ifd1, little);
+        long offset = -1;
+        long size = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = ifd1 + 2 + i * 12;
+            if (entry + 12 > length) {
+                return null;
+            }
+            int tag = readShort(data, entry, little);
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                offset = readInt(data, entry + 8, little);
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                size = readInt(data, entry + 8, little);
+            }
+        }
+        if (offset <= 0 || size <= 0 || tiff + offset + size > length) {
+            return null;
+        }
+        byte[] thumbnail = new byte[(int) size];
+        System.arraycopy(data, tiff + (int) offset, thumbnail, 0, (int) size);
+        return thumbnail;
+    }
+
+    /**
+     * True for a progressive jpeg, its first scans already cover the whole picture at low detail so a
+     * partial download decodes into a usable preview
+     */
+    public static boolean isProgressive(byte[] data, int length) {
+        return findSegment(data, length, SOF_PROGRESSIVE) >= 0;
+    }
+
+    /**
+     * @return offset of the marker of the first segment of the type before the image data, -1 when there is none
+     */
+    private static int findSegment(byte[] data, int length, int type) {
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+            return -1;
+        }
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if ((data[pos] & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == type) {
+                return pos;
+            }
+            if (marker == SOS || (marker >= SOF_BASELINE && marker <= SOF_PROGRESSIVE && type == APP1)) {
+                // metadata comes before the frame header, past it there is nothing more to find
+                return -1;
+            }
+            pos += 2 + readShort(data, pos + 2, false);
+        }
+        return -1;
+    }
+
+    private static int readShort(byte[] data, int pos, boolean little) {
+        int b0 = data[pos] & 0xFF;
+        int b1 = data[pos + 1] & 0xFF;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] data, int pos, boolean little) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = data[pos + (little ? 3 - i : i)] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
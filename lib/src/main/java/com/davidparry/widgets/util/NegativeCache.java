@@ -0,0 +1,185 @@
+package com.davidparry.widgets.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NegativeCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final long MINUTE = 60 * 1000L;
+    // no transient failure waits longer than this between attempts
+    private static final long MAX_BACKOFF = 5 * MINUTE;
+
+    /**
+     * Why a url failed, a missing image stays missing while a busy server or a bad network comes back
+     */
+    public enum Reason {
+        NOT_FOUND(false, 10 * MINUTE),
+        CLIENT_ERROR(false, 10 * MINUTE),
+        NOT_AN_IMAGE(false, 10 * MINUTE),
+        SERVER_ERROR(true, 5 * 1000L),
+        TIMEOUT(true, 15 * 1000L),
+        NETWORK(true, 2 * 1000L);
+
+        private final boolean retryable;
+        private final long defaultTtl;
+
+        Reason(boolean retryable, long defaultTtl) {
+            this.retryable = retryable;
+            this.defaultTtl = defaultTtl;
+        }
+
+        /**
+         * True when trying again later may work, such failures back off exponentially from their ttl
+         */
+        public boolean isTransient() {
+            return retryable;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Reason, Long> ttls = new EnumMap<>(Reason.class);
+    // url -> its last failure, kept past the ttl so the next failure backs off further, the eldest goes first
+    private final LinkedHashMap<String, Failure> failures = new LinkedHashMap<>(32, 0.75f, true);
+
+    public NegativeCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public NegativeCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        for (Reason reason : Reason.values()) {
+            ttls.put(reason, reason.defaultTtl);
+        }
+    }
+
+    /**
+     * Reason for a failed load or null when the error says nothing about the url, a bug should not block it
+     */
+    public static Reason reasonFor(Exception error) {
+        if (error instanceof HttpStatusException) {
+            int code = ((HttpStatusException) error).getStatusCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+                return Reason.NOT_FOUND;
+            }
+            // too many requests is the server asking to come back later
+            if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == 429) {
+                return Reason.SERVER_ERROR;
+            }
+            return Reason.CLIENT_ERROR;
+        }
+        if (error instanceof SocketTimeoutException) {
+            return Reason.TIMEOUT;
+        }
+        if (error instanceof IOException) {
+            return Reason.NETWORK;
+        }
+        return null;
+    }
+
+    /**
+     * @param ttl - how long a url failing for the reason is left alone, the first wait of a transient reason
+     */
+    public synchronized void setTtl(Reason reason, long ttl) {
+        ttls.put(reason, ttl);
+    }
+
+    /**
+     * Records a failure, a transient one in a row with the last waits twice as long as it did
+     *
+     * @return the failure with the time the url may be tried again
+     */
+    public synchronized Failure recordFailure(String url, Reason reason, long now) {
+        Failure last = failures.get(url);
+        int count = last != null && last.reason.isTransient() == reason.isTransient() ? last.count + 1 : 1;
+        long ttl = ttls.get(reason);
+        if (reason.isTransient()) {
+            int doublings = Math.min(count - 1, 30);
+            ttl = Math.min(ttl << doublings, Math.max(ttl, MAX_BACKOFF));
+        }
+        Failure failure = new Failure(reason, count, now + ttl);
+        failures.put(url, failure);
+        if (failures.size() > maxEntries) {
+            String eldest = failures.keySet().iterator().next();
+            failures.remove(eldest);
+        }
+        return failure;
+    }
+
+    /**
+     * @return the failure still holding the url back or null when it may be loaded
+     */
+    public synchronized Failure getBlocking(String url, long now) {
+        Failure failure = url != null ? failures.get(url) : null;
+        return failure != null && now < failure.retryAt ? failure : null;
+    }
+
+    /**
+     * Forgets the url's failures, called once it loaded so the next failure starts from the first ttl
+     */
+    public synchronized void clear(String url) {
+        failures.remove(url);
+    }
+
+    public synchronized void clear() {
+        failures.clear();
+    }
+
+    public synchronized int size() {
+        return failures.size();
+    }
+
+    public static class Failure {
+        private final Reason reason;
+        private final int count;
+        private final long retryAt;
+
+        Failure(Reason reason, int count, long retryAt) {
+            this.reason = reason;
+            this.count = count;
+            this.retryAt = retryAt;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return failures in a row, the backoff doubles with each transient one
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public long getRetryAt() {
+            return retryAt;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "reason=" + reason +
+                    ", count=" + count +
+                    ", retryAt=" + retryAt +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.davidparry.widgets.util;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class OpaqueDetector {
+    private static final int PNG_COLOR_GRAY = 0;
+    private static final int PNG_COLOR_RGB = 2;
+    private static final int PNG_COLOR_PALETTE = 3;
+    // room for a png signature, IHDR and a full 256 color PLTE ahead of IDAT
+    private static final int HEADER_BYTES = 2048;
+
+    private OpaqueDetector() {
+    }
+
+    /**
+     * Tells from the header bytes whether an image can have transparent pixels, the content type is only
+     * used when the bytes are not a format known here
+     *
+     * @param contentType - the response Content-Type, may be null
+     * @return true when every pixel is opaque, so the image loses nothing decoded without an alpha channel
+     */
+    public static boolean isOpaque(byte[] data, String contentType) {
+        if (isJpeg(data)) {
+            return true;
+        }
+        if (isPng(data)) {
+            return isOpaquePng(data);
+        }
+        if (isWebp(data)) {
+            return isOpaqueWebp(data);
+        }
+        if (isGif(data)) {
+            return false;
+        }
+        return contentType != null && contentType.toLowerCase(Locale.US).startsWith("image/jpeg");
+    }
+
+    /**
+     * Same as {@link #isOpaque(byte[], String)} looking only at the first bytes of the buffer, a png whose
+     * chunks before the pixel data do not fit in them counts as transparent
+     */
+    public static boolean isOpaque(ByteBuffer data, String contentType) {
+        byte[] header = new byte[Math.min(data.remaining(), HEADER_BYTES)];
+        data.duplicate().get(header);
+        return isOpaque(header, contentType);
+    }
+
+    private static boolean isJpeg(byte[] data) {
+        return data.length > 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF;
+    }
+
+    private static boolean isPng(byte[] data) {
+        return data.length > 25 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G';
+    }
+
+    private static boolean isWebp(byte[] data) {
+        return data.length > 20 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P';
+    }
+
+    private static boolean isGif(byte[] data) {
+        return data.length > 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F';
+    }
+
+    /**
+     * Gray and rgb pngs are opaque, palette ones too unless a tRNS chunk comes before the pixel data
+     */
+    private static boolean isOpaquePng(byte[] data) {
+        // color type is in IHDR, the first chunk, right after width, height and bit depth
+        int colorType = data[25] & 0xFF;
+        if (colorType != PNG_COLOR_GRAY && colorType != PNG_COLOR_RGB && colorType != PNG_COLOR_PALETTE) {
+            return false;
+        }
+        int pos = 8;
+        while (pos + 8 <= data.length) {
+            long length = ((data[pos] & 0xFFL) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            String type = new String(data, pos + 4, 4);
+            if (type.equals("tRNS")) {
+                return false;
+            }
+            if (type.equals("IDAT")) {
+                return true;
+            }
+            if (length > data.length - pos - 12) {
+                // runs past the header bytes, or a bogus length that would wrap the position
+                return false;
+            }
+            // length, type, data and crc
+            pos += 12 + (int) length;
+        }
+        return false;
+    }
+
+    /**
+     * Lossy VP8 has no alpha, the extended VP8X header has a flag for it, lossless VP8L may always carry it
+     */
+    private static boolean isOpaqueWebp(byte[] data) {
+        if (data[12] == 'V' && data[13] == 'P' && data[14] == '8') {
+            if (data[15] == ' ') {
+                return true;
+            }
+            if (data[15] == 'X') {
+                return (data[20] & 0x10) == 0;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,456 @@
+package com.davidparry.widgets.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class PackFileStore implements ImageStore {
+    public static final int DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    private static final String TAG = "PackFileStore";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final int MAGIC = 0x44575031;
+    private static final int TOMBSTONE = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    // id -> where its newest record lives in access order, the eldest entry is evicted first
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>(64, 0.75f, true);
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    // image bytes of live entries
+    private long size;
+    // bytes taken by all records including overwritten, evicted and removed ones
+    private long packedBytes;
+    private boolean opened;
+
+    public PackFileStore(File directory, long maxBytes) {
+        this(directory, maxBytes, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Small images packed into a few memory mapped segment files, a thumbnail costs no file of its own, no
+     * open on read and no copy into the heap before it is decoded
+     *
+     * @param maxBytes     - budget for the live image bytes, the eldest entries are evicted beyond it
+     * @param segmentBytes - size of each segment file, also the largest image the store takes
+     */
+    public PackFileStore(File directory, long maxBytes, int segmentBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * The entry bytes are a read only view of the mapped segment, valid even after a later compaction
+     * deleted the file
+     */
+    @Override
+    public synchronized Entry getEntry(String id) {
+        Location location = open() ? index.get(id) : null;
+        if (location == null) {
+            return null;
+        }
+        return new Entry(location.segment.slice(location.offset, location.length), location.headers);
+    }
+
+    @Override
+    public synchronized boolean isFresh(String id, long now) {
+        Location location = open() ? index.get(id) : null;
+        return location != null && (location.headers == null || location.headers.isFresh(now));
+    }
+
+    @Override
+    public synchronized void put(String id, byte[] data, CacheHeaders headers) {
+        if (data == null || data.length > maxBytes || !open()) {
+            return;
+        }
+        try {
+            Location location = append(id, ByteBuffer.wrap(data), headers);
+            if (location == null) {
+                return;
+            }
+            Location old = index.put(id, location);
+            if (old != null) {
+                size -= old.length;
+            }
+            size += data.length;
+            trimToSize(maxBytes);
+            compactIfWasteful();
+        } catch (IOException er) {
+            Log.e(TAG, "Error writing pack file entry", er);
+        }
+    }
+
+    /**
+     * Appends a record with the new headers, the one it replaces is reclaimed by a later compaction
+     */
+    @Override
+    public synchronized void updateHeaders(String id, CacheHeaders headers) {
+        Location old = open() ? index.get(id) : null;
+        if (old == null) {
+            return;
+        }
+        try {
+            Location location = append(id, old.segment.slice(old.offset, old.length), headers);
+            if (location != null) {
+                index.put(id, location);
+            }
+        } catch (IOException er) {
+            Log.e(TAG, "Error writing pack file headers", er);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        if (open()) {
+            delete(id);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (open()) {
+            trimToSize(0);
+            compactIfWasteful();
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public long maxSize() {
+        return maxBytes;
+    }
+
+    /**
+     * @return bytes used in the segment files, live entries plus what compaction has yet to reclaim
+     */
+    public synchronized long packedSize() {
+        return packedBytes;
+    }
+
+    public synchronized int segmentCount() {
+        return open() ? segments.size() : 0;
+    }
+
+    /**
+     * Rewrites the live entries into fresh segments and deletes the old ones
+     */
+    public synchronized void compact() {
+        if (!open()) {
+            return;
+        }
+        List<Segment> old = new ArrayList<>(segments);
+        try {
+            active = openSegment(active.number + 1);
+            // eldest first so replaying the new segments restores the access order
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                Location moved = append(entry.getKey(), location.segment.slice(location.offset, location.length),
+                        location.headers);
+                if (moved != null) {
+                    entry.setValue(moved);
+                }
+            }
+        } catch (IOException er) {
+            // the old segments still hold every entry, keep them and write on
+            Log.e(TAG, "Error compacting pack files", er);
+            old.clear();
+        }
+        packedBytes = 0;
+        for (Segment segment : old) {
+            segments.remove(segment);
+            segment.delete();
+        }
+        for (Segment segment : segments) {
+            packedBytes += segment.end;
+        }
+    }
+
+    private void compactIfWasteful() {
+        long waste = packedBytes - size;
+        if (waste > segmentBytes && waste > size) {
+            compact();
+        }
+    }
+
+    private void trimToSize(long max) {
+        Iterator<Map.Entry<String, Location>> it = index.entrySet().iterator();
+        while (size > max && it.hasNext()) {
+            Map.Entry<String, Location> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue().length;
+            tombstone(eldest.getKey());
+        }
+    }
+
+    private void delete(String id) {
+        Location old = index.remove(id);
+        if (old != null) {
+            size -= old.length;
+            tombstone(id);
+            compactIfWasteful();
+        }
+    }
+
+    private void tombstone(String id) {
+        try {
+            append(id, null, null);
+        } catch (IOException er) {
+            Log.e(TAG, "Error writing pack file tombstone", er);
+        }
+    }
+
+    /**
+     * Writes the record behind the active segment's end, starting a new segment when it does not fit
+     *
+     * @param data - null for a tombstone
+     * @return where the image bytes landed or null for a tombstone or a record too large for a segment
+     */
+    private Location append(String id, ByteBuffer data, CacheHeaders headers) throws IOException {
+        byte[] key = id.getBytes(UTF_8);
+        byte[] etag = bytesOf(headers != null ? headers.getEtag() : null);
+        byte[] lastModified = bytesOf(headers != null ? headers.getLastModified() : null);
+        int length = data != null ? data.remaining() : 0;
+        int recordBytes = 4 + 4 + 2 + key.length + 1
+                + (headers != null ? 8 + stringBytes(etag) + stringBytes(lastModified) : 0) + 4 + length;
+        if (recordBytes > segmentBytes || key.length > Short.MAX_VALUE) {
+            return null;
+        }
+        if (active.end + recordBytes > segmentBytes) {
+            active = openSegment(active.number + 1);
+        }
+        ByteBuffer out = active.buffer;
+        int start = active.end;
+        out.position(start + 4);
+        out.putInt(recordBytes);
+        out.putShort((short) key.length).put(key);
+        out.put((byte) (headers != null ? 1 : 0));
+        if (headers != null) {
+            out.putLong(headers.getExpiresAt());
+            putString(out, etag);
+            putString(out, lastModified);
+        }
+        out.putInt(data != null ? length : TOMBSTONE);
+        int offset = out.position();
+        if (data != null) {
+            out.put(data.duplicate());
+        }
+        // the magic goes in last, a record torn by a crash reads as the end of the segment
+        out.putInt(start, MAGIC);
+        active.end = start + recordBytes;
+        packedBytes += recordBytes;
+        return data != null ? new Location(active, offset, length, headers) : null;
+    }
+
+    /**
+     * Lazily maps the segments and replays their records on first use so the cost lands on a loader thread
+     */
+    private boolean open() {
+        if (opened) {
+            return active != null;
+        }
+        opened = true;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create pack file directory " + directory);
+            return false;
+        }
+        try {
+            for (int number : segmentNumbers()) {
+                Segment segment = openSegment(number);
+                replay(segment);
+                active = segment;
+            }
+            if (active == null) {
+                active = openSegment(0);
+            }
+        } catch (IOException er) {
+            Log.e(TAG, "Unable to open pack files", er);
+            active = null;
+            return false;
+        }
+        trimToSize(maxBytes);
+        return true;
+    }
+
+    /**
+     * Reads records up to the first one that is missing or torn, later records win over earlier ones
+     */
+    private void replay(Segment segment) {
+        ByteBuffer in = segment.buffer;
+        int pos = 0;
+        try {
+            while (pos + 8 <= segmentBytes && in.getInt(pos) == MAGIC) {
+                int recordBytes = in.getInt(pos + 4);
+                if (recordBytes <= 8 || pos + recordBytes > segmentBytes) {
+                    break;
+                }
+                in.position(pos + 8);
+                byte[] key = new byte[in.getShort()];
+                in.get(key);
+                String id = new String(key, UTF_8);
+                CacheHeaders headers = null;
+                if (in.get() == 1) {
+                    long expiresAt = in.getLong();
+                    String etag = getString(in);
+                    headers = new CacheHeaders(etag, getString(in), expiresAt);
+                }
+                int length = in.getInt();
+                Location old;
+                if (length == TOMBSTONE) {
+                    old = index.remove(id);
+                } else {
+                    old = index.put(id, new Location(segment, in.position(), length, headers));
+                    size += length;
+                }
+                if (old != null) {
+                    size -= old.length;
+                }
+                pos += recordBytes;
+            }
+        } catch (RuntimeException er) {
+            Log.e(TAG, "Pack file " + segment.file + " is corrupt, keeping what was read", er);
+        }
+        segment.end = pos;
+        packedBytes += pos;
+    }
+
+    private int[] segmentNumbers() {
+        String[] names = directory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    numbers[count++] = Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException er) {
+                    count--;
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        File file = new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            // sized up front so one mapping serves every later append, the unwritten tail stays sparse
+            if (access.length() != segmentBytes) {
+                access.setLength(segmentBytes);
+            }
+            MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            Segment segment = new Segment(number, file, buffer);
+            segments.add(segment);
+            return segment;
+        } finally {
+            // the mapping stays valid after the file is closed
+            access.close();
+        }
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value != null ? value.getBytes(UTF_8) : null;
+    }
+
+    private static int stringBytes(byte[] value) {
+        return 2 + (value != null ? value.length : 0);
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putShort((short) -1);
+        } else {
+            out.putShort((short) value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.get(value);
+        return new String(value, UTF_8);
+    }
+
+    private static class Segment {
+        private final int number;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int end;
+
+        Segment(int number, File file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.limit(offset + length).position(offset);
+            return view.slice();
+        }
+
+        void delete() {
+            // pages already handed out stay readable, the file is only unlinked
+            if (!file.delete()) {
+                Log.e(TAG, "Unable to delete pack file " + file);
+            }
+        }
+    }
+
+    private static class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final CacheHeaders headers;
+
+        Location(Segment segment, int offset, int length, CacheHeaders headers) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.headers = headers;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.davidparry.widgets.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class Streams {
+
+    private Streams() {
+    }
+
+    public static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads what is left of the stream and closes it, a fully read http body lets the connection be reused
+     *
+     * @param max - give up after this many bytes, it is cheaper to drop the connection than read a big body
+     * @return true when the end of the stream was reached
+     */
+    public static boolean drain(InputStream input, int max) {
+        if (input == null) {
+            return true;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            int total = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                total += read;
+                if (total > max) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException er) {
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException er) {
+                // nothing to do on close
+            }
+        }
+    }
+}
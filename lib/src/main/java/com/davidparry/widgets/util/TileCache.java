@@ -0,0 +1,69 @@
+package com.davidparry.widgets.util;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TileCache extends LruCache<String, Bitmap> {
+    private final int initialBytes;
+    // lowered under memory pressure, LruCache can only be resized from api 21
+    private volatile int budget;
+
+    /**
+     * Decoded tiles of every {@link TiledDrawable}, kept apart from the memory cache so a pan across a large
+     * image does not push out the images of the rest of the screen
+     *
+     * @param maxBytes - budget for the pixels of all tiles
+     */
+    public TileCache(int maxBytes) {
+        super(maxBytes);
+        this.initialBytes = maxBytes;
+        this.budget = maxBytes;
+    }
+
+    /**
+     * Adds a decoded tile and keeps the tiles within the budget
+     */
+    public void add(String id, Bitmap tile) {
+        put(id, tile);
+        int max = budget;
+        if (size() > max) {
+            trimToSize(max);
+        }
+    }
+
+    /**
+     * Sets the budget to a share of the one the cache was created with and trims to it, tiles added later stay
+     * within it until it is raised again
+     */
+    public void trimToFraction(float fraction) {
+        budget = (int) (initialBytes * Math.max(0f, Math.min(fraction, 1f)));
+        trimToSize(budget);
+    }
+
+    /**
+     * Bytes the tiles may take now, {@link #maxSize()} or less after a trim
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    @Override
+    protected int sizeOf(String key, Bitmap value) {
+        return BitmapPool.byteCount(value);
+    }
+}
@@ -0,0 +1,354 @@
+package com.davidparry.widgets.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TiledDrawable extends Drawable {
+    // side of a tile in its own pixels, at every sample
+    public static final int TILE_SIZE = 256;
+    private static final String TAG = "TiledDrawable";
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final BitmapRegionDecoder decoder;
+    private final String key;
+    private final TileCache tiles;
+    private final Executor executor;
+    private final Bitmap.Config config;
+    private final int imageWidth;
+    private final int imageHeight;
+    // the whole image decoded for the view size, drawn under the tiles and on its own when zoomed out
+    private final Bitmap base;
+    private final int baseSample;
+    private final Rect baseRect;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // tiles queued or decoding, a tile is asked for once however many frames need it
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // tiles the last frame needed, a queued decode of a tile panned away from since is dropped
+    private volatile Set<String> wanted = Collections.emptySet();
+    // views showing this drawable, the decoder is released once the cache dropped it and none is left
+    private int displayed;
+    private boolean evicted;
+    private volatile boolean released;
+    private final Rect clip = new Rect();
+    private final Rect tileRect = new Rect();
+    private final Rect dst = new Rect();
+    private final Matrix matrix = new Matrix();
+    private final float[] values = new float[9];
+    private final Runnable invalidate = new Runnable() {
+        @Override
+        public void run() {
+            invalidateSelf();
+        }
+    };
+
+    private TiledDrawable(BitmapRegionDecoder decoder, String key, TileCache tiles, Executor executor,
+                          Bitmap.Config config, Bitmap base, int baseSample) {
+        this.decoder = decoder;
+        this.key = key;
+        this.tiles = tiles;
+        this.executor = executor;
+        this.config = config;
+        this.imageWidth = decoder.getWidth();
+        this.imageHeight = decoder.getHeight();
+        this.base = base;
+        this.baseSample = baseSample;
+        this.baseRect = new Rect(0, 0, base.getWidth(), base.getHeight());
+    }
+
+    /**
+     * Opens the image for region decoding and decodes the base layer for the requested size. Drawn under a
+     * canvas that scales it up, as an ImageView with a matrix does while zooming, only the tiles in the clip are
+     * decoded at the detail the scale needs. Do not call from the main thread.
+     *
+     * @param key      - tiles are cached under it, the memory cache id of the image
+     * @param tiles    - the tier the decoded tiles are kept in
+     * @param executor - decodes the tiles
+     * @param config   - pixel format of base and tiles, null for ARGB_8888
+     * @return the drawable or null when the format cannot be decoded by region, jpeg, png and webp can
+     */
+    public static TiledDrawable create(ByteBuffer data, int reqWidth, int reqHeight, String key, TileCache tiles,
+                                       Executor executor, Bitmap.Config config) {
+        BitmapRegionDecoder decoder;
+        try {
+            if (data.hasArray()) {
+                decoder = BitmapRegionDecoder.newInstance(data.array(), data.arrayOffset() + data.position(),
+                        data.remaining(), false);
+            } else {
+                // a mapped entry is streamed from its pages, the decoder keeps its own copy either way
+                decoder = BitmapRegionDecoder.newInstance(new ByteBufferInputStream(data), false);
+            }
+        } catch (IOException er) {
+            return null;
+        }
+        if (decoder == null) {
+            return null;
+        }
+        int sample = BitmapDecoder.calculateInSampleSize(decoder.getWidth(), decoder.getHeight(), reqWidth, reqHeight);
+        Bitmap base = null;
+        try {
+            base = decoder.decodeRegion(new Rect(0, 0, decoder.getWidth(), decoder.getHeight()), options(sample, config));
+        } catch (RuntimeException | OutOfMemoryError er) {
+            Log.e(TAG, "Unable to decode the base of " + key, er);
+        }
+        if (base == null) {
+            decoder.recycle();
+            return null;
+        }
+        return new TiledDrawable(decoder, key, tiles, executor, config, base, sample);
+    }
+
+    private static BitmapFactory.Options options(int sample, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sample;
+        if (config != null) {
+            options.inPreferredConfig = config;
+        }
+        return options;
+    }
+
+    /**
+     * Largest power of two at or below the image pixels one screen pixel covers, tiles are decoded at it so
+     * they are never coarser than the screen
+     */
+    static int sampleFor(float imagePixelsPerScreenPixel) {
+        int sample = 1;
+        while (sample * 2 <= imagePixelsPerScreenPixel) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    static String tileKey(String key, int sample, int column, int row) {
+        return key + "#" + sample + "/" + column + "," + row;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+        canvas.drawBitmap(base, baseRect, bounds, paint);
+        if (released) {
+            // the decoder is gone, the base is all there is to draw
+            return;
+        }
+        if (!canvas.getClipBounds(clip) || !clip.intersect(bounds.left, bounds.top, bounds.right, bounds.bottom)) {
+            return;
+        }
+        canvas.getMatrix(matrix);
+        matrix.getValues(values);
+        float scale = (float) Math.hypot(values[Matrix.MSCALE_X], values[Matrix.MSKEW_Y]);
+        float toImageX = (float) imageWidth / bounds.width();
+        float toImageY = (float) imageHeight / bounds.height();
+        int sample = sampleFor(toImageX / Math.max(scale, 0.0001f));
+        int left = Math.max(0, (int) ((clip.left - bounds.left) * toImageX));
+        int top = Math.max(0, (int) ((clip.top - bounds.top) * toImageY));
+        int right = Math.min(imageWidth, (int) Math.ceil((clip.right - bounds.left) * toImageX));
+        int bottom = Math.min(imageHeight, (int) Math.ceil((clip.bottom - bounds.top) * toImageY));
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        int span = TILE_SIZE * sample;
+        // coarser tiles until the visible ones fit the tier twice over, or a pan would evict what it just decoded
+        while (sample < baseSample && tileBytes(left, top, right, bottom, span) * 2 > tiles.getBudget()) {
+            sample *= 2;
+            span = TILE_SIZE * sample;
+        }
+        if (sample >= baseSample) {
+            wanted = Collections.emptySet();
+            return;
+        }
+        Set<String> needed = new HashSet<>();
+        List<Tile> missing = null;
+        for (int row = top / span; row * span < bottom; row++) {
+            for (int column = left / span; column * span < right; column++) {
+                String id = tileKey(key, sample, column, row);
+                needed.add(id);
+                Bitmap tile = tiles.get(id);
+                if (tile == null) {
+                    if (!pending.contains(id)) {
+                        if (missing == null) {
+                            missing = new ArrayList<>();
+                        }
+                        missing.add(new Tile(id, column, row, sample));
+                    }
+                    continue;
+                }
+                tileRect.set(0, 0, tile.getWidth(), tile.getHeight());
+                dst.set(bounds.left + Math.round(column * span / toImageX),
+                        bounds.top + Math.round(row * span / toImageY),
+                        bounds.left + Math.round(Math.min(imageWidth, (column + 1) * span) / toImageX),
+                        bounds.top + Math.round(Math.min(imageHeight, (row + 1) * span) / toImageY));
+                canvas.drawBitmap(tile, tileRect, dst, paint);
+            }
+        }
+        // published before the decodes are queued so none of them is dropped as stale
+        wanted = needed;
+        if (missing != null) {
+            for (Tile tile : missing) {
+                if (pending.add(tile.id)) {
+                    executor.execute(tile);
+                }
+            }
+        }
+    }
+
+    private int tileBytes(int left, int top, int right, int bottom, int span) {
+        int columns = (right - 1) / span - left / span + 1;
+        int rows = (bottom - 1) / span - top / span + 1;
+        return columns * rows * TILE_SIZE * TILE_SIZE * BitmapPool.bytesPerPixel(config != null ? config
+                : Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * A view started showing this drawable, {@link #markHidden()} when it stops
+     */
+    public synchronized void markDisplayed() {
+        displayed++;
+    }
+
+    public void markHidden() {
+        synchronized (this) {
+            if (displayed > 0) {
+                displayed--;
+            }
+        }
+        releaseIfUnused();
+    }
+
+    /**
+     * The memory cache dropped this drawable. The decoder holds a native copy of the whole encoded image, it
+     * is recycled now or once the last view showing the drawable lets go, a draw after that shows the base.
+     */
+    public void evict() {
+        synchronized (this) {
+            evicted = true;
+        }
+        releaseIfUnused();
+    }
+
+    private void releaseIfUnused() {
+        synchronized (this) {
+            if (!evicted || displayed > 0 || released) {
+                return;
+            }
+            released = true;
+        }
+        wanted = Collections.emptySet();
+        decoder.recycle();
+    }
+
+    boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Memory of the base layer, what a memory cache holding this drawable is charged, the tiles are charged to
+     * their own tier
+     */
+    public int getByteCount() {
+        return BitmapPool.byteCount(base);
+    }
+
+    public Bitmap getBase() {
+        return base;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private class Tile implements Runnable {
+        private final String id;
+        private final int column;
+        private final int row;
+        private final int sample;
+
+        Tile(String id, int column, int row, int sample) {
+            this.id = id;
+            this.column = column;
+            this.row = row;
+            this.sample = sample;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (released || !wanted.contains(id) || tiles.get(id) != null) {
+                    return;
+                }
+                int span = TILE_SIZE * sample;
+                Rect region = new Rect(column * span, row * span, Math.min(imageWidth, (column + 1) * span),
+                        Math.min(imageHeight, (row + 1) * span));
+                Bitmap tile = decoder.decodeRegion(region, options(sample, config));
+                if (tile != null) {
+                    tiles.add(id, tile);
+                    mainHandler.post(invalidate);
+                }
+            } catch (RuntimeException | OutOfMemoryError er) {
+                Log.e(TAG, "Unable to decode tile " + id, er);
+            } finally {
+                pending.remove(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.davidparry.widgets.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class VariantIndex {
+    // source url -> the sizes it is cached at
+    private final Map<String, List<Variant>> bySource = new HashMap<>();
+
+    /**
+     * Cache id of a source decoded for a size, ids of this form are indexed by their source
+     */
+    public static String idFor(String source, int width, int height) {
+        return source + "@" + width + "x" + height;
+    }
+
+    public synchronized void add(String id) {
+        Variant variant = Variant.parse(id);
+        if (variant == null) {
+            return;
+        }
+        List<Variant> variants = bySource.get(variant.source);
+        if (variants == null) {
+            variants = new ArrayList<>(2);
+            bySource.put(variant.source, variants);
+        }
+        for (Variant existing : variants) {
+            if (existing.id.equals(id)) {
+                return;
+            }
+        }
+        variants.add(variant);
+    }
+
+    public synchronized void remove(String id) {
+        Variant variant = Variant.parse(id);
+        if (variant == null) {
+            return;
+        }
+        List<Variant> variants = bySource.get(variant.source);
+        if (variants == null) {
+            return;
+        }
+        for (int i = 0; i < variants.size(); i++) {
+            if (variants.get(i).id.equals(id)) {
+                variants.remove(i);
+                break;
+            }
+        }
+        if (variants.isEmpty()) {
+            bySource.remove(variant.source);
+        }
+    }
+
+    /**
+     * The smallest other variant of the same source decoded for at least the id's size on both sides, 0 counts
+     * as unbounded
+     *
+     * @return its cache id or null when no cached variant covers the size
+     */
+    public synchronized String findLarger(String id) {
+        Variant wanted = Variant.parse(id);
+        List<Variant> variants = wanted != null ? bySource.get(wanted.source) : null;
+        if (variants == null) {
+            return null;
+        }
+        Variant best = null;
+        for (Variant variant : variants) {
+            if (variant.id.equals(id) || !variant.covers(wanted)) {
+                continue;
+            }
+            if (best == null || best.covers(variant)) {
+                best = variant;
+            }
+        }
+        return best != null ? best.id : null;
+    }
+
+    public synchronized void clear() {
+        bySource.clear();
+    }
+
+    private static class Variant {
+        private final String id;
+        private final String source;
+        private final int width;
+        private final int height;
+
+        Variant(String id, String source, int width, int height) {
+            this.id = id;
+            this.source = source;
+            this.width = width;
+            this.height = height;
+        }
+
+        static Variant parse(String id) {
+            int at = id != null ? id.lastIndexOf('@') : -1;
+            int x = at >= 0 ? id.indexOf('x', at) : -1;
+            if (x < 0) {
+                return null;
+            }
+            try {
+                return new Variant(id, id.substring(0, at), Integer.parseInt(id.substring(at + 1, x)),
+                        Integer.parseInt(id.substring(x + 1)));
+            } catch (NumberFormatException er) {
+                return null;
+            }
+        }
+
+        boolean covers(Variant other) {
+            return covers(width, other.width) && covers(height, other.height);
+        }
+
+        private static boolean covers(int side, int otherSide) {
+            if (side == 0) {
+                return true;
+            }
+            return otherSide != 0 && side >= otherSide;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.davidparry.widgets;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+final class Benchmark {
+    // -Dbenchmark.out=file appends each result, -Dbenchmark.baseline=file fails a result slower than it allows
+    private static final String OUT = System.getProperty("benchmark.out");
+    private static final String BASELINE = System.getProperty("benchmark.baseline");
+    // share of the baseline ops/sec a result may fall to before it counts as a regression
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.8"));
+    private static final long WARMUP_NANOS = Long.getLong("benchmark.warmupMs", 500) * 1000000L;
+    private static final long ROUND_NANOS = Long.getLong("benchmark.roundMs", 200) * 1000000L;
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+    private static Map<String, Double> baseline;
+    // results fold into it so the jit cannot drop the work that produced them
+    static volatile long sink;
+
+    private Benchmark() {
+    }
+
+    interface Op {
+        /**
+         * @param i - count of the call on this thread, to vary keys and points
+         * @return anything the work produced
+         */
+        long run(int i);
+    }
+
+    /**
+     * Runs the op on the calling thread
+     */
+    static Result measure(String name, Op op) throws Exception {
+        return measure(name, 1, op);
+    }
+
+    /**
+     * Runs the op on as many threads at once, ops/sec is their sum and allocation their average per op. Each
+     * round is timed on its own and the median round is reported, a gc pause in one round does not move it.
+     */
+    static Result measure(String name, final int threads, final Op op) throws Exception {
+        run(threads, op, WARMUP_NANOS);
+        double[] opsPerSec = new double[ROUNDS];
+        long ops = 0;
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long[] counts = run(threads, op, ROUND_NANOS);
+            long elapsed = System.nanoTime() - start;
+            opsPerSec[round] = counts[0] * 1e9 / elapsed;
+            ops += counts[0];
+            allocated += counts[1];
+        }
+        Arrays.sort(opsPerSec);
+        Result result = new Result(name, threads, opsPerSec[ROUNDS / 2],
+                allocated >= 0 && ops > 0 ? (double) allocated / ops : -1);
+        report(result);
+        return result;
+    }
+
+    /**
+     * @return ops done and bytes allocated by all threads, bytes are -1 when the vm does not count them
+     */
+    private static long[] run(int threads, final Op op, final long nanos) throws Exception {
+        final long[][] counts = new long[threads][2];
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Exception[] failure = new Exception[1];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.countDown();
+                        go.await();
+                        long allocatedBefore = allocatedBytes();
+                        long end = System.nanoTime() + nanos;
+                        long produced = 0;
+                        int i = index * 7919;
+                        int calls = 0;
+                        // checking the clock every op would cost more than the cheapest ops measured
+                        while (calls % 64 != 0 || System.nanoTime() < end) {
+                            produced += op.run(i++);
+                            calls++;
+                        }
+                        long allocatedAfter = allocatedBytes();
+                        sink += produced;
+                        counts[index][0] = calls;
+                        counts[index][1] = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+                    } catch (Exception er) {
+                        failure[0] = er;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Benchmark-" + t);
+            thread.start();
+        }
+        ready.await();
+        go.countDown();
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        long[] total = new long[2];
+        for (long[] count : counts) {
+            total[0] += count[0];
+            total[1] = total[1] < 0 || count[1] < 0 ? -1 : total[1] + count[1];
+        }
+        return total;
+    }
+
+    /**
+     * Bytes the calling thread allocated so far, from the hotspot extension of the thread bean, -1 elsewhere
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        try {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } catch (UnsupportedOperationException er) {
+            return -1;
+        }
+    }
+
+    private static synchronized void report(Result result) throws IOException {
+        System.out.println(result);
+        if (OUT != null) {
+            Writer writer = new FileWriter(OUT, true);
+            try {
+                writer.write(result.name + "\t" + result.threads + "\t" + Math.round(result.opsPerSec) + "\t"
+                        + String.format("%.1f", result.bytesPerOp) + "\n");
+            } finally {
+                writer.close();
+            }
+        }
+        Double expected = baseline().get(result.name + "\t" + result.threads);
+        if (expected != null && result.opsPerSec < expected * TOLERANCE) {
+            throw new AssertionError(result + " is below " + Math.round(expected) + " ops/s of the baseline");
+        }
+    }
+
+    private static Map<String, Double> baseline() throws IOException {
+        if (baseline != null) {
+            return baseline;
+        }
+        baseline = new HashMap<>();
+        if (BASELINE == null || !new File(BASELINE).exists()) {
+            return baseline;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(BASELINE));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 3) {
+                    // the latest run of a benchmark in the file is its baseline
+                    baseline.put(parts[0] + "\t" + parts[1], Double.parseDouble(parts[2]));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return baseline;
+    }
+
+    static class Result {
+        final String name;
+        final int threads;
+        final double opsPerSec;
+        // -1 when the vm does not count allocations
+        final double bytesPerOp;
+
+        Result(String name, int threads, double opsPerSec, double bytesPerOp) {
+            this.name = name;
+            this.threads = threads;
+            this.opsPerSec = opsPerSec;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        /**
+         * Allocation rate in bytes per second, the figure to watch on the ui thread
+         */
+        double bytesPerSec() {
+            return bytesPerOp < 0 ? -1 : bytesPerOp * opsPerSec;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s threads=%d ops/s=%.0f B/op=%.1f MB/s=%.1f", name, threads, opsPerSec,
+                    bytesPerOp, bytesPerSec() / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.davidparry.widgets;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageLruCache;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CacheBenchmark {
+    private static final int KEYS = 1024;
+    private static final int THREADS = 4;
+    // one put in this many ops, a scrolling list reads far more than it decodes
+    private static final int PUT_EVERY = 10;
+    private static final String[] keys = new String[KEYS];
+    // the same urls at a smaller size, each one has a larger variant cached
+    private static final String[] smallKeys = new String[KEYS];
+    private static final Drawable[] drawables = new Drawable[KEYS];
+
+    static {
+        for (int i = 0; i < KEYS; i++) {
+            String url = "http://www.davidparry.com/storage/image" + i + ".png";
+            keys[i] = ThreadLoadingImageView.cacheIdFor(url, 96, 96);
+            smallKeys[i] = ThreadLoadingImageView.cacheIdFor(url, 48, 48);
+        }
+    }
+
+    @Test
+    public void memoryCacheTest() throws Exception {
+        run("MemoryCache", new MemoryCache(cacheKb()));
+    }
+
+    @Test
+    public void shardedMemoryCacheTest() throws Exception {
+        run("ShardedMemoryCache", new ShardedMemoryCache(cacheKb()));
+    }
+
+    @Test
+    public void imageLruCacheTest() throws Exception {
+        fillDrawables();
+        final ImageLruCache cache = new ImageLruCache(cacheKb());
+        for (int i = 0; i < KEYS; i++) {
+            cache.putVariant(keys[i], drawables[i]);
+        }
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                int index = (i * 31) & (KEYS - 1);
+                if (i % PUT_EVERY == 0) {
+                    cache.putVariant(keys[index], drawables[index]);
+                    return 1;
+                }
+                return cache.get(keys[index]) != null ? 1 : 0;
+            }
+        };
+        assertRan(Benchmark.measure("ImageLruCache.getPut", op));
+        assertRan(Benchmark.measure("ImageLruCache.getPut", THREADS, op));
+    }
+
+    /**
+     * Mixed gets and puts on one thread and then on several, the drop from one to the other is the contention
+     */
+    private static void run(String name, final ImageCache cache) throws Exception {
+        fillDrawables();
+        for (int i = 0; i < KEYS; i++) {
+            cache.put(keys[i], drawables[i]);
+        }
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                int index = (i * 31) & (KEYS - 1);
+                if (i % PUT_EVERY == 0) {
+                    cache.put(keys[index], drawables[index]);
+                    return 1;
+                }
+                return cache.get(keys[index]) != null ? 1 : 0;
+            }
+        };
+        assertRan(Benchmark.measure(name + ".getPut", op));
+        assertRan(Benchmark.measure(name + ".getPut", THREADS, op));
+        Benchmark.Op variant = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                return cache.findLargerVariant(smallKeys[(i * 31) & (KEYS - 1)]) != null ? 1 : 0;
+            }
+        };
+        assertRan(Benchmark.measure(name + ".findLargerVariant", variant));
+    }
+
+    private static synchronized void fillDrawables() {
+        if (drawables[0] != null) {
+            return;
+        }
+        for (int i = 0; i < KEYS; i++) {
+            drawables[i] = new BitmapDrawable(null, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+        }
+    }
+
+    /**
+     * Room for every key, hits are measured rather than the cost of evictions
+     */
+    private static int cacheKb() {
+        return KEYS * 2;
+    }
+
+    private static void assertRan(Benchmark.Result result) {
+        Assert.assertTrue(result.opsPerSec > 0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.davidparry.widgets;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import com.davidparry.widgets.util.ImageCache;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImageCacheContentionBenchmark {
+    private static final int WRITERS = 10;
+    private static final int KEYS = 512;
+
+    @Test
+    public void memoryCacheTest() throws Exception {
+        measureGetUnderLoad("MemoryCache", new MemoryCache(4 * 1024));
+    }
+
+    @Test
+    public void shardedMemoryCacheTest() throws Exception {
+        measureGetUnderLoad("ShardedMemoryCache", new ShardedMemoryCache(4 * 1024));
+    }
+
+    /**
+     * Gets on one thread, standing in for the ui thread, while as many writers as the loader pool keep putting
+     */
+    private static void measureGetUnderLoad(String name, final ImageCache cache) throws Exception {
+        final Drawable[] drawables = new Drawable[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            drawables[i] = new BitmapDrawable(null, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+            cache.put(key(i), drawables[i]);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch started = new CountDownLatch(WRITERS);
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int seed = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    int i = seed;
+                    while (running.get()) {
+                        cache.put(key(i % KEYS), drawables[i % KEYS]);
+                        i += WRITERS + 1;
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        started.await();
+        final long[] hits = new long[1];
+        Benchmark.Result result;
+        try {
+            result = Benchmark.measure(name + ".getUnderWriters", new Benchmark.Op() {
+                @Override
+                public long run(int i) {
+                    if (cache.get(key((i * 7) % KEYS)) == null) {
+                        return 0;
+                    }
+                    hits[0]++;
+                    return 1;
+                }
+            });
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        Assert.assertTrue(result.opsPerSec > 0);
+        Assert.assertTrue(hits[0] > 0);
+    }
+
+    private static String key(int i) {
+        return "http://www.davidparry.com/storage/image" + i + ".png@96x96";
+    }
+}
@@ -0,0 +1,131 @@
+package com.davidparry.widgets;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import com.davidparry.widgets.util.BitmapPool;
+import com.davidparry.widgets.util.EncodedMemoryCache;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.TileCache;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImageCacheTrimmerTest {
+    private static final int ENTRIES = 64;
+
+    @Test
+    public void trimsProgressivelyTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        ShardedMemoryCache cache = new ShardedMemoryCache(ENTRIES, pool);
+        fill(cache);
+        EncodedMemoryCache encoded = new EncodedMemoryCache(ENTRIES * 1024);
+        TileCache tiles = new TileCache(ENTRIES * 1024);
+        ImageCacheTrimmer trimmer = new ImageCacheTrimmer(cache, encoded, tiles);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        Assert.assertTrue(cache.size() <= cache.maxSize() && cache.maxSize() == ENTRIES * 1024 / 2);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        Assert.assertEquals(ENTRIES * 1024 / 4, cache.maxSize());
+        Assert.assertTrue(cache.size() <= ENTRIES * 1024 / 4);
+        // evicted bitmaps went to the reuse pool rather than being dropped
+        Assert.assertTrue(pool.putCount() > 0);
+        // the other tiers keep the lowered budget for what is put after the trim
+        Assert.assertEquals(1024 * 1024 / 4, pool.maxSize());
+        Assert.assertEquals(ENTRIES * 1024 / 4, encoded.maxSize());
+        for (int i = 0; i < ENTRIES; i++) {
+            encoded.put(key(i), new byte[1024], null);
+            tiles.add(key(i), Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+        }
+        Assert.assertEquals(ENTRIES * 1024 / 4, encoded.size());
+        Assert.assertEquals(ENTRIES * 1024 / 4, tiles.size());
+        // a milder signal afterwards gives part of the memory back
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        Assert.assertEquals(ENTRIES * 1024 * 3 / 4, cache.maxSize());
+        Assert.assertEquals(ENTRIES * 1024 * 3 / 4, encoded.maxSize());
+        trimmer.onForeground();
+        Assert.assertEquals(1f, trimmer.getFraction());
+        Assert.assertEquals(ENTRIES * 1024, cache.maxSize());
+        Assert.assertEquals(1024 * 1024, pool.maxSize());
+        Assert.assertEquals(ENTRIES * 1024, tiles.getBudget());
+    }
+
+    @Test
+    public void foregroundTrimRestoredTest() throws Exception {
+        ShardedMemoryCache cache = new ShardedMemoryCache(ENTRIES);
+        ImageCacheTrimmer trimmer = new ImageCacheTrimmer(cache);
+        // trimmed while running, the app was never hidden
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        Assert.assertEquals(ENTRIES * 1024 / 4, cache.maxSize());
+        trimmer.onForeground();
+        Assert.assertEquals(1f, trimmer.getFraction());
+        Assert.assertEquals(ENTRIES * 1024, cache.maxSize());
+    }
+
+    @Test
+    public void lowMemoryRestoredTest() throws Exception {
+        ShardedMemoryCache cache = new ShardedMemoryCache(ENTRIES);
+        fill(cache);
+        ImageCacheTrimmer trimmer = new ImageCacheTrimmer(cache);
+        trimmer.onLowMemory();
+        Assert.assertEquals(0, cache.size());
+        // the image just decoded is still there for the view waiting on it
+        cache.put(key(0), drawable());
+        Assert.assertNotNull(cache.get(key(0)));
+        trimmer.onForeground();
+        fill(cache);
+        Assert.assertNotNull(cache.get(key(0)));
+        Assert.assertNotNull(cache.get(key(ENTRIES - 1)));
+    }
+
+    @Test
+    public void memoryCacheTest() throws Exception {
+        MemoryCache cache = new MemoryCache(ENTRIES);
+        fill(cache);
+        ImageCacheTrimmer trimmer = new ImageCacheTrimmer(cache);
+        trimmer.onLowMemory();
+        Assert.assertNull(cache.get(key(ENTRIES - 1)));
+        cache.put(key(0), drawable());
+        Assert.assertNotNull(cache.get(key(0)));
+        // the next put takes its place
+        cache.put(key(1), drawable());
+        Assert.assertNull(cache.get(key(0)));
+        Assert.assertNotNull(cache.get(key(1)));
+        trimmer.onForeground();
+        fill(cache);
+        Assert.assertNotNull(cache.get(key(0)));
+        Assert.assertNotNull(cache.get(key(ENTRIES - 1)));
+    }
+
+    private static void fill(ImageCache cache) {
+        for (int i = 0; i < ENTRIES; i++) {
+            cache.put(key(i), drawable());
+        }
+    }
+
+    private static BitmapDrawable drawable() {
+        // 1kb each
+        return new BitmapDrawable(null, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+    }
+
+    private static String key(int i) {
+        return "http://www.davidparry.com/storage/image" + i + ".png@16x16";
+    }
+}
@@ -0,0 +1,227 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.CacheHeaders;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImageLoaderExecutorTest {
+    private RecordingTransport transport;
+    private ImageTransport previous;
+
+    @Before
+    public void setUp() {
+        previous = ThreadLoadingImageView.getTransport("http");
+        transport = new RecordingTransport();
+        ThreadLoadingImageView.setTransport("http", transport);
+    }
+
+    @After
+    public void tearDown() {
+        transport.gate.countDown();
+        ThreadLoadingImageView.setTransport("http", previous);
+        ThreadLoadingImageView.getNegativeCache().clear();
+    }
+
+    @Test
+    public void newestFirstWithinPriorityTest() throws Exception {
+        ImageLoaderExecutor executor = new ImageLoaderExecutor(1);
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+        block(executor, cache, "http://order.test/blocker");
+        executor.execute(loader(cache, "http://order.test/n1", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        executor.execute(loader(cache, "http://order.test/n2", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        executor.execute(loader(cache, "http://order.test/v", ThreadLoadingImageView.ImageLoader.PRIORITY_VISIBLE));
+        executor.execute(loader(cache, "http://order.test/l", ThreadLoadingImageView.ImageLoader.PRIORITY_LOW));
+        Assert.assertEquals(4, executor.getQueueDepth());
+        transport.gate.countDown();
+        awaitOpened(5);
+        Assert.assertEquals(Arrays.asList("http://order.test/blocker", "http://order.test/v",
+                "http://order.test/n2", "http://order.test/n1", "http://order.test/l"), transport.opened());
+    }
+
+    @Test
+    public void reprioritizeTest() throws Exception {
+        ImageLoaderExecutor executor = new ImageLoaderExecutor(1);
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+        block(executor, cache, "http://reorder.test/blocker");
+        ThreadLoadingImageView.ImageLoader first = loader(cache, "http://reorder.test/1",
+                ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL);
+        executor.execute(first);
+        executor.execute(loader(cache, "http://reorder.test/2", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        executor.execute(loader(cache, "http://reorder.test/3", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        // the oldest row scrolled back into view
+        executor.reprioritize(first, ThreadLoadingImageView.ImageLoader.PRIORITY_VISIBLE);
+        Assert.assertEquals(ThreadLoadingImageView.ImageLoader.PRIORITY_VISIBLE, first.getPriority());
+        transport.gate.countDown();
+        awaitOpened(4);
+        Assert.assertEquals(Arrays.asList("http://reorder.test/blocker", "http://reorder.test/1",
+                "http://reorder.test/3", "http://reorder.test/2"), transport.opened());
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        ImageLoaderExecutor executor = new ImageLoaderExecutor(1);
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+        ThreadLoadingImageView.ImageLoader running = block(executor, cache, "http://cancel.test/running");
+        ThreadLoadingImageView.ImageLoader queued = loader(cache, "http://cancel.test/queued",
+                ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL);
+        executor.execute(queued);
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        Assert.assertTrue(executor.cancel(queued));
+        Assert.assertEquals(0, executor.getQueueDepth());
+        Assert.assertEquals(1, executor.getCancelledQueuedCount());
+
+        Assert.assertFalse(executor.cancel(running));
+        Assert.assertEquals(1, executor.getCancelledRunningCount());
+
+        transport.gate.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        // the cancelled load never reached the transport
+        Assert.assertEquals(Arrays.asList("http://cancel.test/running"), transport.opened());
+    }
+
+    @Test
+    public void cancelDispatchedLoadTest() throws Exception {
+        ImageLoaderExecutor executor = new ImageLoaderExecutor(1);
+        executor.setMaxRequestsForHost("slot.test", 1);
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+        final CountDownLatch busy = new CountDownLatch(1);
+        // a plain task holds the only thread, the load gets its host slot and waits in the pool queue
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                busy.countDown();
+                try {
+                    transport.gate.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException er) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Assert.assertTrue(busy.await(30, TimeUnit.SECONDS));
+        ThreadLoadingImageView.ImageLoader waiting = loader(cache, "http://slot.test/1",
+                ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL);
+        executor.execute(waiting);
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        Assert.assertTrue(executor.cancel(waiting));
+        Assert.assertEquals(0, executor.getQueueDepth());
+        Assert.assertEquals(1, executor.getCancelledQueuedCount());
+        Assert.assertEquals(0, executor.getCancelledRunningCount());
+
+        // the cancelled load gave its host slot back
+        executor.execute(loader(cache, "http://slot.test/2", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        transport.gate.countDown();
+        awaitOpened(1);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("http://slot.test/2"), transport.opened());
+    }
+
+    @Test
+    public void hostLimitTest() throws Exception {
+        ImageLoaderExecutor executor = new ImageLoaderExecutor(4);
+        executor.setMaxRequestsForHost("a.test", 1);
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+        block(executor, cache, "http://a.test/1");
+        executor.execute(loader(cache, "http://a.test/2", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        executor.execute(loader(cache, "http://b.test/1", ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL));
+        // b has free slots, a waits on its only one
+        awaitOpened(2);
+        Assert.assertEquals(Arrays.asList("http://a.test/1", "http://b.test/1"), transport.opened());
+        Assert.assertEquals(1, executor.getQueueDepth());
+        transport.gate.countDown();
+        awaitOpened(3);
+        Assert.assertEquals("http://a.test/2", transport.opened().get(2));
+    }
+
+    /**
+     * Starts a load that holds its thread and its host slot until the gate opens
+     */
+    private ThreadLoadingImageView.ImageLoader block(ImageLoaderExecutor executor, ShardedMemoryCache cache,
+                                                     String url) throws InterruptedException {
+        transport.blocked = url;
+        ThreadLoadingImageView.ImageLoader load = loader(cache, url, ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL);
+        executor.execute(load);
+        Assert.assertTrue(transport.blocking.await(30, TimeUnit.SECONDS));
+        return load;
+    }
+
+    private static ThreadLoadingImageView.ImageLoader loader(ShardedMemoryCache cache, String url, int priority) {
+        return new ThreadLoadingImageView.ImageLoader(new RecordingThreadLoad(url, cache, null), priority);
+    }
+
+    private void awaitOpened(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (transport.opened().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, transport.opened().size());
+    }
+
+    /**
+     * Records the order loads reach the network in and fails each of them, one url waits on the gate first
+     */
+    private static class RecordingTransport implements ImageTransport {
+        private final List<String> opened = new ArrayList<>();
+        private final CountDownLatch blocking = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private volatile String blocked;
+
+        @Override
+        public boolean isLocal() {
+            return false;
+        }
+
+        @Override
+        public Response open(String url, CacheHeaders validators) throws IOException {
+            synchronized (opened) {
+                opened.add(url);
+            }
+            if (url.equals(blocked)) {
+                blocking.countDown();
+                try {
+                    gate.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException er) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            throw new IOException("No network in " + url);
+        }
+
+        List<String> opened() {
+            synchronized (opened) {
+                return new ArrayList<>(opened);
+            }
+        }
+    }
+}
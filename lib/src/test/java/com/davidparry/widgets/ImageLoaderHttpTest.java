@@ -0,0 +1,180 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.EncodedMemoryCache;
+import com.davidparry.widgets.util.NegativeCache;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImageLoaderHttpTest {
+    private static final int IMAGES = 200;
+    // kept reachable the way views are, the cache holds its listeners weakly
+    private final List<RecordingThreadLoad> loads = new ArrayList<>();
+
+    @Test
+    public void keepAliveTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            CountDownLatch done = new CountDownLatch(IMAGES);
+            for (int i = 0; i < IMAGES; i++) {
+                start(new RecordingThreadLoad(server.url(i), cache, done));
+            }
+            Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(IMAGES, server.getRequestCount());
+            // a single host behind a per host limit, drained responses leave their connection in the keep-alive pool
+            Assert.assertTrue(server.getConnectionCount() < IMAGES / 2);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void coalescingTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        // slow enough that every view asks while the first download is still running
+        server.setLatency(300, 300);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            CountDownLatch done = new CountDownLatch(10);
+            ThreadLoadingImageView.ImageLoader first = null;
+            for (int i = 0; i < 10; i++) {
+                RecordingThreadLoad load = new RecordingThreadLoad(server.url(0), cache, done);
+                loads.add(load);
+                cache.registerListener(load);
+                ThreadLoadingImageView.ImageLoader loader = ThreadLoadingImageView.submit(load,
+                        ThreadLoadingImageView.ImageLoader.PRIORITY_NORMAL);
+                if (first == null) {
+                    first = loader;
+                }
+                // attached to the download already in flight
+                Assert.assertSame(first, loader);
+            }
+            Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+            Assert.assertNotNull(cache.get(server.url(0) + "@64x64"));
+            Assert.assertEquals(1, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void encodedTierTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        ThreadLoadingImageView.setEncodedCache(new EncodedMemoryCache(1024 * 1024));
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                // a fresh decoded cache each pass, as if every bitmap had been evicted
+                ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+                CountDownLatch done = new CountDownLatch(10);
+                for (int i = 0; i < 10; i++) {
+                    start(new RecordingThreadLoad(server.url(i), cache, done));
+                }
+                Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+                // listeners hear of the decode before the bytes are held, let the loads finish
+                awaitIdle();
+            }
+            Assert.assertEquals(10, server.getRequestCount());
+        } finally {
+            ThreadLoadingImageView.setEncodedCache(null);
+            server.stop();
+        }
+    }
+
+    @Test
+    public void negativeCacheTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            for (int pass = 0; pass < 2; pass++) {
+                // the waiting load hears about the failure through its cache listener
+                CountDownLatch done = new CountDownLatch(1);
+                start(new RecordingThreadLoad(server.missingUrl(0), cache, done));
+                Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+                Assert.assertNull(cache.get(server.missingUrl(0) + "@64x64"));
+            }
+            NegativeCache.Failure failure = ThreadLoadingImageView.getNegativeCache()
+                    .getBlocking(server.missingUrl(0), System.currentTimeMillis());
+            Assert.assertEquals(NegativeCache.Reason.NOT_FOUND, failure.getReason());
+            // the second bind did not go back to the server
+            Assert.assertEquals(1, server.getRequestCount());
+        } finally {
+            ThreadLoadingImageView.getNegativeCache().clear();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void metricsTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        ImagePipelineMetrics metrics = new ImagePipelineMetrics();
+        ThreadLoadingImageView.setLoadListener(metrics);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            CountDownLatch done = new CountDownLatch(20);
+            for (int i = 0; i < 20; i++) {
+                start(new RecordingThreadLoad(server.url(i), cache, done));
+            }
+            Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+            // the event is reported after the cache put that released the latch
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metrics.snapshot().getLoad().getCount() < 20 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            ImagePipelineMetrics.Snapshot snapshot = metrics.snapshot();
+            Assert.assertEquals(20, snapshot.getOutcomeCount(ImageLoadEvent.Outcome.SUCCESS));
+            Assert.assertEquals(0, snapshot.getOutcomeCount(ImageLoadEvent.Outcome.FAILED));
+            Assert.assertEquals(20, snapshot.getTierCount(ImageLoadEvent.Tier.NETWORK));
+            Assert.assertEquals(0, snapshot.getTierCount(ImageLoadEvent.Tier.MEMORY));
+            Assert.assertEquals(20, snapshot.getLoad().getCount());
+            Assert.assertEquals(20, snapshot.getQueued().getCount());
+            Assert.assertEquals(20, snapshot.getConnect().getCount());
+            Assert.assertEquals(20, snapshot.getDownload().getCount());
+            Assert.assertEquals(20, snapshot.getDecode().getCount());
+            // every stage of a load fits inside the whole of it
+            Assert.assertTrue(snapshot.getDownload().getMaxNanos() <= snapshot.getLoad().getMaxNanos());
+            Assert.assertTrue(snapshot.getLoad().getMaxNanos() > 0);
+            // each png is a few hundred bytes at least
+            Assert.assertTrue(snapshot.getBytes() >= 20 * 100);
+        } finally {
+            ThreadLoadingImageView.setLoadListener(null);
+            server.stop();
+        }
+    }
+
+    private void start(RecordingThreadLoad load) {
+        loads.add(load);
+        load.startLoad();
+    }
+
+    private static void awaitIdle() throws InterruptedException {
+        ImageLoaderExecutor executor = ThreadLoadingImageView.getLoaderExecutor();
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((executor.getActiveCount() > 0 || executor.getQueueDepth() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
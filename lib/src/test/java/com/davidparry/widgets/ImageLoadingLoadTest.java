@@ -0,0 +1,166 @@
+package com.davidparry.widgets;
+
+import android.app.Activity;
+import android.util.AttributeSet;
+import android.view.ViewGroup;
+import com.davidparry.widgets.util.LatencyHistogram;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImageLoadingLoadTest {
+    private static final int VIEWS = Integer.getInteger("loadtest.views", 300);
+    // fewer urls than views, some images are shown by several views at once
+    private static final int URLS = VIEWS * 2 / 3;
+    private static final int VIEW_SIZE = 96;
+    private static final long TIMEOUT = 120 * 1000L;
+    // main looper time run per poll, about a frame
+    private static final long FRAME_MILLIS = 16;
+    private LocalImageServer server;
+    private ImagePipelineMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = LocalImageServer.start(64, 64);
+        metrics = new ImagePipelineMetrics();
+        ThreadLoadingImageView.setLoadListener(metrics);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ThreadLoadingImageView.setLoadListener(null);
+        ThreadLoadingImageView.getNegativeCache().clear();
+        server.stop();
+    }
+
+    @Test
+    public void thumbnailsTest() throws Exception {
+        server.setImageSizes(new int[]{64, 64}, new int[]{128, 128}, new int[]{96, 160});
+        server.setLatency(5, 40);
+        Result result = run("thumbnails");
+        Assert.assertEquals(VIEWS, result.displayed);
+    }
+
+    @Test
+    public void largeImagesTest() throws Exception {
+        server.setImageSizes(new int[]{640, 480}, new int[]{1024, 768});
+        server.setLatency(20, 120);
+        Result result = run("large");
+        Assert.assertEquals(VIEWS, result.displayed);
+    }
+
+    @Test
+    public void flakyServerTest() throws Exception {
+        server.setImageSizes(new int[]{64, 64}, new int[]{256, 256});
+        server.setLatency(10, 300);
+        server.setErrorRate(0.05f);
+        Result result = run("flaky");
+        // a failing url is backed off from, every view either shows its image or is waiting out a failure
+        Assert.assertEquals(VIEWS, result.displayed + result.failed);
+        Assert.assertTrue(result.failed > 0);
+    }
+
+    /**
+     * Binds every view to its url at once, like a grid filling a tall screen, and runs the main looper until
+     * each one shows its image or its url is held back by a failure
+     */
+    private Result run(String name) throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        AttributeSet attr = Mockito.mock(AttributeSet.class);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        Runtime runtime = Runtime.getRuntime();
+        long peakHeap = runtime.totalMemory() - runtime.freeMemory();
+        ThreadLoadingImageView[] views = new ThreadLoadingImageView[VIEWS];
+        String[] urls = new String[VIEWS];
+        long start = System.nanoTime();
+        for (int i = 0; i < VIEWS; i++) {
+            views[i] = new ThreadLoadingImageView(activity, attr);
+            views[i].setLayoutParams(new ViewGroup.LayoutParams(VIEW_SIZE, VIEW_SIZE));
+            urls[i] = server.url(i % URLS);
+            views[i].loadImageFromUrl(urls[i]);
+        }
+        Result result = new Result();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            // completions reach the views through the main looper, the poll adds up to a frame to time to display
+            ShadowLooper.idleMainLooper(FRAME_MILLIS);
+            peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+            count(views, urls, result);
+            if (result.displayed + result.failed == VIEWS) {
+                break;
+            }
+            Thread.sleep(5);
+        }
+        long elapsed = System.nanoTime() - start;
+        ImagePipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        LatencyHistogram.Snapshot timeToDisplay = snapshot.getTimeToDisplay();
+        System.out.println(String.format("load test %s views=%d displayed=%d failed=%d images/s=%.1f"
+                        + " ttd ms p50=%.1f p90=%.1f p99=%.1f max=%.1f peak heap MB=%.1f peak threads=%d"
+                        + " requests=%d connections=%d server errors=%d",
+                name, VIEWS, result.displayed, result.failed, result.displayed * 1e9 / elapsed,
+                millis(timeToDisplay.getPercentileNanos(50)), millis(timeToDisplay.getPercentileNanos(90)),
+                millis(timeToDisplay.getPercentileNanos(99)), millis(timeToDisplay.getMaxNanos()),
+                peakHeap / (1024 * 1024.0), threads.getPeakThreadCount(), server.getRequestCount(),
+                server.getConnectionCount(), server.getErrorCount()));
+        System.out.println(snapshot);
+        System.out.println(ThreadLoadingImageView.getLoaderExecutor());
+        return result;
+    }
+
+    private static void count(ThreadLoadingImageView[] views, String[] urls, Result result) {
+        result.displayed = 0;
+        result.failed = 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < views.length; i++) {
+            if (views[i].getDrawable() != null) {
+                result.displayed++;
+                continue;
+            }
+            // the server fails the same paths every time, a url seen failing once stays counted as failed
+            if (result.failing.contains(urls[i])
+                    || ThreadLoadingImageView.getNegativeCache().getBlocking(urls[i], now) != null) {
+                result.failing.add(urls[i]);
+                result.failed++;
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class Result {
+        private int displayed;
+        private int failed;
+        private final Set<String> failing = new HashSet<>();
+    }
+}
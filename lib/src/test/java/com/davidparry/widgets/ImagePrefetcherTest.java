@@ -0,0 +1,101 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.DiskImageCache;
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ImagePrefetcherTest {
+    private static final int IMAGES = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void decodesIntoMemoryTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            ImagePrefetcher prefetcher = new ImagePrefetcher(cache, null);
+            ImagePrefetcher.Group group = prefetcher.prefetch(urls(server), 64, 64);
+            awaitDone(group);
+            for (String url : urls(server)) {
+                Assert.assertNotNull(cache.get(ThreadLoadingImageView.cacheIdFor(url, 64, 64)));
+            }
+            // a second pass finds everything decoded and starts nothing
+            Assert.assertEquals(0, prefetcher.prefetch(urls(server), 64, 64).getPendingCount());
+            Assert.assertEquals(IMAGES, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void warmsDiskOnlyTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        try {
+            DiskImageCache disk = new DiskImageCache(folder.getRoot(), 1024 * 1024);
+            ImagePrefetcher.Group group = new ImagePrefetcher(null, disk).prefetch(urls(server));
+            awaitDone(group);
+            for (String url : urls(server)) {
+                Assert.assertNotNull(disk.get(url));
+            }
+            awaitDone(new ImagePrefetcher(null, disk).prefetch(urls(server)));
+            Assert.assertEquals(IMAGES, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void cancelsAsGroupTest() throws Exception {
+        LocalImageServer server = LocalImageServer.start(64, 64);
+        try {
+            ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+            ImagePrefetcher.Group group = new ImagePrefetcher(cache, null).prefetch(urls(server), 64, 64);
+            group.cancel();
+            Assert.assertEquals(0, group.getPendingCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static List<String> urls(LocalImageServer server) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++) {
+            urls.add(server.url(i));
+        }
+        return urls;
+    }
+
+    private static void awaitDone(ImagePrefetcher.Group group) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (group.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, group.getPendingCount());
+    }
+}
@@ -0,0 +1,118 @@
+package com.davidparry.widgets;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ListenerFanOutBenchmark {
+    // views of other images waiting at the same time, the registry has to find the one id among them
+    private static final int WAITING = 1000;
+    // the registry only holds listeners weakly, as it would a view
+    private final List<Listener> held = new ArrayList<>();
+
+    @Test
+    public void fanOutTest() throws Exception {
+        fanOut(1);
+        fanOut(16);
+        fanOut(64);
+    }
+
+    @Test
+    public void rebindTest() throws Exception {
+        final ListenerRegistry registry = registryWithWaiting();
+        final String[] ids = ids("rebind", 256);
+        final Listener listener = new Listener(ids[0]);
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                // a recycled row bound to the next url
+                listener.id = ids[i & 255];
+                registry.register(listener);
+                return 1;
+            }
+        };
+        Assert.assertTrue(Benchmark.measure("ListenerRegistry.rebind", op).opsPerSec > 0);
+    }
+
+    /**
+     * Registers as many listeners on one id and notifies them, the path of an image shown by several views
+     */
+    private void fanOut(final int listeners) throws Exception {
+        final ListenerRegistry registry = registryWithWaiting();
+        final String[] ids = ids("fanout", 256);
+        final Listener[] waiting = new Listener[listeners];
+        for (int i = 0; i < listeners; i++) {
+            waiting[i] = new Listener(null);
+        }
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                String id = ids[i & 255];
+                for (Listener listener : waiting) {
+                    listener.id = id;
+                    registry.register(listener);
+                }
+                registry.notifyLoaded(id);
+                return waiting[0].count;
+            }
+        };
+        Benchmark.Result result = Benchmark.measure("ListenerRegistry.fanOut" + listeners, op);
+        Assert.assertTrue(result.opsPerSec > 0);
+        Assert.assertEquals(WAITING, registry.size());
+    }
+
+    private ListenerRegistry registryWithWaiting() {
+        ListenerRegistry registry = new ListenerRegistry();
+        String[] ids = ids("waiting", WAITING);
+        for (String id : ids) {
+            Listener listener = new Listener(id);
+            held.add(listener);
+            registry.register(listener);
+        }
+        return registry;
+    }
+
+    private static String[] ids(String prefix, int count) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = ThreadLoadingImageView.cacheIdFor("http://www.davidparry.com/" + prefix + i + ".png", 96, 96);
+        }
+        return ids;
+    }
+
+    private static class Listener implements MemoryCache.Listener {
+        private String id;
+        private long count;
+
+        Listener(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void loaded() {
+            count++;
+        }
+
+        @Override
+        public String getCacheId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.davidparry.widgets;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ListenerRegistryTest {
+
+    @Test
+    public void notifiesOnceTest() throws Exception {
+        ListenerRegistry registry = new ListenerRegistry();
+        CountingListener listener = new CountingListener("a");
+        registry.register(listener);
+        registry.notifyLoaded("a");
+        registry.notifyLoaded("a");
+        Assert.assertEquals(1, listener.count);
+        Assert.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void deduplicatesAndFollowsRebindTest() throws Exception {
+        ListenerRegistry registry = new ListenerRegistry();
+        CountingListener listener = new CountingListener("a");
+        registry.register(listener);
+        registry.register(listener);
+        Assert.assertEquals(1, registry.size());
+        listener.id = "b";
+        registry.register(listener);
+        registry.notifyLoaded("a");
+        Assert.assertEquals(0, listener.count);
+        registry.notifyLoaded("b");
+        Assert.assertEquals(1, listener.count);
+    }
+
+    @Test
+    public void unregisterTest() throws Exception {
+        ListenerRegistry registry = new ListenerRegistry();
+        CountingListener first = new CountingListener("a");
+        CountingListener second = new CountingListener("a");
+        registry.register(first);
+        registry.register(second);
+        registry.unregister(first);
+        registry.notifyLoaded("a");
+        Assert.assertEquals(0, first.count);
+        Assert.assertEquals(1, second.count);
+    }
+
+    private static class CountingListener implements MemoryCache.Listener {
+        private String id;
+        private int count;
+
+        CountingListener(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void loaded() {
+            count++;
+        }
+
+        @Override
+        public String getCacheId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.davidparry.widgets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class LocalImageServer implements HttpHandler {
+    private final HttpServer server;
+    // the image of a path index is the one at the index modulo their count
+    private volatile byte[][] images;
+    private volatile int minLatency;
+    private volatile int maxLatency;
+    private volatile float errorRate;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    // one remote address per tcp connection the client opened
+    private final Set<String> connections = Collections.synchronizedSet(new HashSet<String>());
+
+    private LocalImageServer(int width, int height) throws IOException {
+        this.images = new byte[][]{png(width, height)};
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * Serves the same png of the given size under any path, every path is a separate cache id for the client
+     */
+    public static LocalImageServer start(int width, int height) throws IOException {
+        LocalImageServer server = new LocalImageServer(width, height);
+        server.server.start();
+        return server;
+    }
+
+    public String url(int index) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/images/" + index + ".png";
+    }
+
+    /**
+     * A path the server answers with a 404
+     */
+    public String missingUrl(int index) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/missing/" + index + ".png";
+    }
+
+    /**
+     * Serves images of these sizes instead, each size a {width, height} pair
+     */
+    public void setImageSizes(int[]... sizes) throws IOException {
+        byte[][] encoded = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            encoded[i] = png(sizes[i][0], sizes[i][1]);
+        }
+        images = encoded;
+    }
+
+    /**
+     * Delays each response between the two, a path always gets the same delay so runs can be compared
+     */
+    public void setLatency(int minMillis, int maxMillis) {
+        this.minLatency = minMillis;
+        this.maxLatency = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Share of image paths answered with a 503, the same paths on every run and every request
+     */
+    public void setErrorRate(float rate) {
+        this.errorRate = rate;
+    }
+
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress().toString());
+        InputStream body = exchange.getRequestBody();
+        while (body.read() != -1) {
+            // requests have no body, read it off anyway so the connection can be kept alive
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/missing/")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        int hash = mix(path.hashCode());
+        if (maxLatency > 0) {
+            try {
+                Thread.sleep(minLatency + (hash >>> 1) % (maxLatency - minLatency + 1));
+            } catch (InterruptedException er) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errorRate > 0 && (mix(hash) >>> 1) % 10000 < errorRate * 10000) {
+            errors.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        byte[][] served = images;
+        byte[] image = served[indexOf(path) % served.length];
+        exchange.getResponseHeaders().add("Content-Type", "image/png");
+        exchange.getResponseHeaders().add("Cache-Control", "max-age=3600");
+        exchange.sendResponseHeaders(200, image.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(image);
+        out.close();
+    }
+
+    private static int indexOf(String path) {
+        int start = path.lastIndexOf('/') + 1;
+        int end = path.indexOf('.', start);
+        try {
+            return Integer.parseInt(path.substring(start, end > 0 ? end : path.length()));
+        } catch (NumberFormatException er) {
+            return 0;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 31 + y * 17) & 0xffffff);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package com.davidparry.widgets;
+
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class LocalTransportTest {
+    private static final String URL = "http://www.davidparry.com/storage/image.png";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mapsFileTest() throws Exception {
+        File file = new File(folder.getRoot(), "an image.png");
+        byte[] data = new byte[]{1, 2, 3, 4, 5};
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        String url = "file://" + file.getAbsolutePath().replace(" ", "%20") + "?v=2";
+        ImageTransport.Response response = new LocalTransport(null).open(url, null);
+        // mapped where it lies, there is no stream to copy it through
+        Assert.assertNull(response.getBody());
+        ByteBuffer mapped = response.getData();
+        Assert.assertEquals(data.length, response.getContentLength());
+        byte[] read = new byte[mapped.remaining()];
+        mapped.get(read);
+        Assert.assertEquals(3, read[2]);
+        response.close(true);
+    }
+
+    @Test
+    public void pathOfTest() {
+        Assert.assertEquals("/sdcard/a b.png", LocalTransport.pathOf("/sdcard/a%20b.png?v=1#top"));
+        Assert.assertEquals("///images/a.png", LocalTransport.pathOf("///images/a.png"));
+    }
+
+    @Test
+    public void selectsBySchemeTest() {
+        Assert.assertFalse(ThreadLoadingImageView.transportFor(URL).isLocal());
+        Assert.assertTrue(ThreadLoadingImageView.transportFor("FILE:///sdcard/a.png").isLocal());
+        // a local image is decoded to the size from itself, never from a rendition
+        ResizeUrlResolver resolver = new ResizeUrlResolver("w", "h");
+        Assert.assertEquals("file:///sdcard/a.png",
+                ThreadLoadingImageView.requestUrlFor("file:///sdcard/a.png", 96, 96, resolver));
+    }
+
+    @Test
+    public void swapsHttpTransportTest() {
+        ImageTransport original = ThreadLoadingImageView.getTransport("https");
+        ImageTransport replacement = new HttpTransport(5000, 5000);
+        ThreadLoadingImageView.setTransport("https", replacement);
+        try {
+            Assert.assertSame(replacement, ThreadLoadingImageView.transportFor("https://www.davidparry.com/a.png"));
+            Assert.assertNotSame(replacement, ThreadLoadingImageView.transportFor(URL));
+        } finally {
+            ThreadLoadingImageView.setTransport("https", original);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.davidparry.widgets;
+
+import android.graphics.Bitmap;
+import com.davidparry.widgets.util.ImageCache;
+import com.davidparry.widgets.util.ImageStore;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class RecordingThreadLoad implements LoadRequest, MemoryCache.Listener {
+    private final String url;
+    private final CountDownLatch done;
+    private final ImageCache cache;
+
+    /**
+     * A view stand-in that counts down when its image reached the cache, the caller keeps it reachable the way
+     * a view is, listeners are held weakly
+     *
+     * @param done - counted down once loaded, may be null
+     */
+    public RecordingThreadLoad(String url, ImageCache cache, CountDownLatch done) {
+        this.url = url;
+        this.cache = cache;
+        this.done = done;
+    }
+
+    @Override
+    public void loaded() {
+        if (done != null) {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public String getCacheId() {
+        return url + "@64x64";
+    }
+
+    @Override
+    public String getImageUrl() {
+        return url;
+    }
+
+    @Override
+    public String getRequestUrl() {
+        return url;
+    }
+
+    @Override
+    public int getTargetWidth() {
+        return 64;
+    }
+
+    @Override
+    public int getTargetHeight() {
+        return 64;
+    }
+
+    @Override
+    public Bitmap.Config getOpaqueConfig() {
+        return null;
+    }
+
+    @Override
+    public boolean isTiled() {
+        return false;
+    }
+
+    public void startLoad() {
+        cache.registerListener(this);
+        ThreadLoadingImageView.getLoaderExecutor().execute(new ThreadLoadingImageView.ImageLoader(this));
+    }
+
+    @Override
+    public ImageCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public ImageStore getDiskCache() {
+        return null;
+    }
+}
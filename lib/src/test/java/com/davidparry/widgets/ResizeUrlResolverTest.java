@@ -0,0 +1,63 @@
+package com.davidparry.widgets;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ResizeUrlResolverTest {
+    private static final String URL = "http://www.davidparry.com/storage/image.png";
+
+    @Test
+    public void snapsToBucketsTest() {
+        ResizeUrlResolver resolver = new ResizeUrlResolver("w", "h", 256, 64, 128);
+        Assert.assertEquals(64, resolver.snap(1));
+        Assert.assertEquals(64, resolver.snap(64));
+        Assert.assertEquals(128, resolver.snap(65));
+        Assert.assertEquals(256, resolver.snap(4000));
+        Assert.assertEquals(URL + "?w=128&h=64", resolver.resolve(URL, 100, 50));
+        // views a few pixels apart ask for the same rendition
+        Assert.assertEquals(resolver.resolve(URL, 90, 60), resolver.resolve(URL, 96, 64));
+    }
+
+    @Test
+    public void boundingBoxTest() {
+        ResizeUrlResolver resolver = new ResizeUrlResolver("w", "h");
+        // both sides snapped, views of different shapes within the same buckets share one rendition
+        Assert.assertEquals(URL + "?w=128&h=128", resolver.resolve(URL, 100, 70));
+        Assert.assertEquals(resolver.resolve(URL, 100, 70), resolver.resolve(URL, 70, 100));
+        Assert.assertEquals(URL + "?w=2048&h=2048", resolver.resolve(URL, 4000, 3000));
+        // only one side known, only that one is sent
+        Assert.assertEquals(URL + "?h=128", resolver.resolve(URL, 0, 100));
+        Assert.assertEquals(URL + "?w=128", resolver.resolve(URL, 100, 0));
+    }
+
+    @Test
+    public void keepsQueryAndFragmentTest() {
+        ResizeUrlResolver resolver = new ResizeUrlResolver("width", null);
+        Assert.assertEquals(URL + "?v=2&width=512#top", resolver.resolve(URL + "?v=2#top", 300, 200));
+        // nothing to size for, the original is downloaded
+        Assert.assertEquals(URL, resolver.resolve(URL, 0, 0));
+    }
+
+    @Test
+    public void cacheIdStaysLogicalTest() {
+        ResizeUrlResolver resolver = new ResizeUrlResolver("w", "h");
+        Assert.assertEquals(URL + "?w=128&h=128", ThreadLoadingImageView.requestUrlFor(URL, 96, 96, resolver));
+        Assert.assertEquals(URL, ThreadLoadingImageView.requestUrlFor(URL, 96, 96, null));
+        Assert.assertEquals(URL + "@96x96", ThreadLoadingImageView.cacheIdFor(URL, 96, 96));
+    }
+}
@@ -0,0 +1,89 @@
+package com.davidparry.widgets;
+
+import android.app.Activity;
+import android.util.AttributeSet;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SimonCircleBenchmark {
+    private static final int SIZE = 1080;
+    // touch points on a grid over the whole view, inside, between and outside the sections
+    private static final int GRID = 32;
+    private SimonCircle circle;
+    private SimonCircle.CircleSection section;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        AttributeSet attr = Mockito.mock(AttributeSet.class);
+        circle = new SimonCircle(activity, attr);
+        section = circle.circleSection;
+        section.onSizeChanged(SIZE, SIZE, 0, 0);
+    }
+
+    @Test
+    public void onSizeChangedTest() throws Exception {
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                // a rotation swaps between two sizes, each one rebuilds every polygon
+                int size = (i & 1) == 0 ? SIZE : SIZE * 2 / 3;
+                section.onSizeChanged(size, size, 0, 0);
+                return section.sectionPolygons.size();
+            }
+        };
+        Assert.assertTrue(Benchmark.measure("CircleSection.onSizeChanged", op).opsPerSec > 0);
+    }
+
+    @Test
+    public void containsPointTest() throws Exception {
+        final SimonCircle.Point[] points = new SimonCircle.Point[GRID * GRID];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = circle.new Point((i % GRID) * SIZE / (float) GRID, (i / GRID) * SIZE / (float) GRID);
+        }
+        final SimonCircle.SectionPolygon[] polygons = section.sectionPolygons.toArray(
+                new SimonCircle.SectionPolygon[section.sectionPolygons.size()]);
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                return polygons[i % polygons.length].containsPoint(points[(i * 7) % points.length]) ? 1 : 0;
+            }
+        };
+        Assert.assertTrue(Benchmark.measure("SectionPolygon.containsPoint", op).opsPerSec > 0);
+    }
+
+    @Test
+    public void sectionMatchTest() throws Exception {
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public long run(int i) {
+                // the touch path, every section is tried until one contains the point
+                int cell = (i * 7) % (GRID * GRID);
+                return section.sectionMatch((cell % GRID) * SIZE / (float) GRID, (cell / GRID) * SIZE / (float) GRID);
+            }
+        };
+        Assert.assertTrue(Benchmark.measure("CircleSection.sectionMatch", op).opsPerSec > 0);
+    }
+}
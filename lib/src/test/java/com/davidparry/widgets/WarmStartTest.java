@@ -0,0 +1,84 @@
+package com.davidparry.widgets;
+
+import com.davidparry.widgets.util.DiskImageCache;
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class WarmStartTest {
+    private static final String HOME = "http://www.davidparry.com/storage/home.png";
+    private static final String AVATAR = "http://www.davidparry.com/storage/avatar.png";
+    private static final String GONE = "http://www.davidparry.com/storage/gone.png";
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotKeepsHottestTest() throws Exception {
+        File file = new File(folder.getRoot(), "hot_set");
+        WarmStart warmStart = new WarmStart(file, DIRECT, 2);
+        for (int i = 0; i < 3; i++) {
+            warmStart.recordDisplayed(HOME, 64, 64);
+        }
+        warmStart.recordDisplayed(AVATAR, 32, 32);
+        warmStart.recordDisplayed(AVATAR, 32, 32);
+        warmStart.recordDisplayed(GONE, 64, 64);
+        Assert.assertTrue(warmStart.getTimeToFirstImageNanos() >= 0);
+        warmStart.save();
+
+        Assert.assertEquals(2, new WarmStart(file, DIRECT, 2).load());
+    }
+
+    @Test
+    public void preloadsFromDiskOnlyTest() throws Exception {
+        File file = new File(folder.getRoot(), "hot_set");
+        WarmStart previous = new WarmStart(file, DIRECT);
+        previous.recordDisplayed(HOME, 64, 64);
+        previous.recordDisplayed(AVATAR, 32, 32);
+        previous.recordDisplayed(GONE, 64, 64);
+        previous.save();
+
+        DiskImageCache disk = new DiskImageCache(folder.newFolder("disk"), 1024 * 1024);
+        disk.put(HOME, LocalImageServer.png(128, 128));
+        disk.put(AVATAR, LocalImageServer.png(32, 32));
+        ShardedMemoryCache cache = new ShardedMemoryCache(16 * 1024);
+
+        WarmStart warmStart = new WarmStart(file, DIRECT);
+        Assert.assertEquals(2, warmStart.preload(cache, disk, null));
+        Assert.assertEquals(2, warmStart.getPreloadedCount());
+        Assert.assertNotNull(cache.get(ThreadLoadingImageView.cacheIdFor(HOME, 64, 64)));
+        Assert.assertNotNull(cache.get(ThreadLoadingImageView.cacheIdFor(AVATAR, 32, 32)));
+        // never on disk, a preload does not go to the network for it
+        Assert.assertNull(cache.get(ThreadLoadingImageView.cacheIdFor(GONE, 64, 64)));
+        Assert.assertEquals(-1, warmStart.getTimeToFirstImageNanos());
+    }
+}
@@ -2,7 +2,12 @@ package com.davidparry.widgets;
 
 import android.app.Activity;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.ViewGroup;
 import junit.framework.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +34,8 @@ import org.robolectric.annotation.Config;
 @RunWith(WidgetRoboletricRunner.class)
 @Config(constants = BuildConfig.class,sdk = 21)
 public class WidgetTest {
+    // nothing listens there, the loads these tests start fail without leaving the machine
+    private static final String URL = "http://127.0.0.1:1/storage/profilesiloet50.png";
     private Resources mResources;
 
     @Before
@@ -68,5 +75,61 @@ public class WidgetTest {
         view.updateImageFromCache();
     }
 
+    @Test
+    public void deliverSkipsRebindTest() throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        AttributeSet attr = Mockito.mock(AttributeSet.class);
+        ThreadLoadingImageView view = new ThreadLoadingImageView(activity,attr);
+        view.setUrl("http://www.davidparry.com/storage/profilesiloet50.png");
+        String staleId = ThreadLoadingImageView.cacheIdFor("http://www.davidparry.com/storage/other.png", 0, 0);
+        view.getCache().put(staleId, new BitmapDrawable(mResources, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888)));
+        view.deliver(staleId, false);
+        Assert.assertNull(view.getDrawable());
+        view.getCache().put(view.getCacheId(), new BitmapDrawable(mResources, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888)));
+        view.deliver(view.getCacheId(), false);
+        Assert.assertNotNull(view.getDrawable());
+    }
+
+    @Test
+    public void targetSizeFromLayoutParamsTest() throws Exception {
+        ThreadLoadingImageView view = view(new ViewGroup.LayoutParams(96, 64));
+        view.loadImageFromUrl(URL);
+        Assert.assertEquals(96, view.getTargetWidth());
+        Assert.assertEquals(64, view.getTargetHeight());
+        Assert.assertEquals(URL + "@96x64", view.getCacheId());
+    }
 
+    @Test
+    public void waitsForLayoutTest() throws Exception {
+        ThreadLoadingImageView view = view(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        view.loadImageFromUrl(URL);
+        // bound before layout, no screen sized decode is started or cached
+        Assert.assertNull(view.getCacheId());
+        view.layout(0, 0, 120, 80);
+        Assert.assertEquals(URL + "@120x80", view.getCacheId());
+        // recycled into a row of the same size, the same entry is asked for
+        view.loadImageFromUrl(URL);
+        Assert.assertEquals(URL + "@120x80", view.getCacheId());
+    }
+
+    @Test
+    public void wrapContentFallsBackToScreenTest() throws Exception {
+        ThreadLoadingImageView view = view(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        view.loadImageFromUrl(URL);
+        Assert.assertNull(view.getCacheId());
+        view.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+        view.layout(0, 0, 0, 0);
+        DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+        Assert.assertEquals(ThreadLoadingImageView.cacheIdFor(URL, metrics.widthPixels, metrics.heightPixels),
+                view.getCacheId());
+    }
+
+    private static ThreadLoadingImageView view(ViewGroup.LayoutParams params) {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        ThreadLoadingImageView view = new ThreadLoadingImageView(activity, Mockito.mock(AttributeSet.class));
+        view.setLayoutParams(params);
+        return view;
+    }
 }
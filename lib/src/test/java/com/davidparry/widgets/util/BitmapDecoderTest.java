@@ -0,0 +1,38 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class BitmapDecoderTest {
+
+    @Test
+    public void sampleKeepsTargetCoveredTest() {
+        // 250x187 is the smallest power of two reduction still covering 96x96
+        Assert.assertEquals(16, BitmapDecoder.calculateInSampleSize(4000, 3000, 96, 96));
+        Assert.assertEquals(1, BitmapDecoder.calculateInSampleSize(100, 100, 96, 96));
+        Assert.assertEquals(1, BitmapDecoder.calculateInSampleSize(50, 50, 96, 96));
+    }
+
+    @Test
+    public void sampleForOneSideTest() {
+        // the side asked for is covered, the other one is free
+        Assert.assertEquals(8, BitmapDecoder.calculateInSampleSize(4000, 3000, 500, 0));
+        Assert.assertEquals(2, BitmapDecoder.calculateInSampleSize(4000, 3000, 0, 1500));
+        Assert.assertEquals(1, BitmapDecoder.calculateInSampleSize(4000, 3000, 0, 0));
+    }
+}
@@ -0,0 +1,120 @@
+package com.davidparry.widgets.util;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import com.davidparry.widgets.BuildConfig;
+import com.davidparry.widgets.ShardedMemoryCache;
+import com.davidparry.widgets.WidgetRoboletricRunner;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+@RunWith(WidgetRoboletricRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BitmapPoolTest {
+
+    @Test
+    public void smallestFittingBucketTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap large = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        Bitmap small = Bitmap.createBitmap(40, 40, Bitmap.Config.ARGB_8888);
+        pool.put(large);
+        pool.put(small);
+        Assert.assertEquals(64 * 64 * 4 + 40 * 40 * 4, pool.size());
+        // 32x32 fits both, the smaller one is handed out
+        Assert.assertSame(small, pool.get(32, 32, Bitmap.Config.ARGB_8888, 2));
+        Assert.assertSame(large, pool.get(32, 32, Bitmap.Config.ARGB_8888, 2));
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void neverFarOversizeTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        pool.put(Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888));
+        // more than four times the bytes needed
+        Assert.assertNull(pool.get(16, 16, Bitmap.Config.ARGB_8888, 1));
+        // larger than anything pooled
+        Assert.assertNull(pool.get(128, 128, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertNotNull(pool.get(32, 32, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    @Config(constants = BuildConfig.class, sdk = 18)
+    public void exactDimensionsBeforeKitKatTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        // same byte count, other dimensions
+        Assert.assertNull(pool.get(32, 128, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertNull(pool.get(32, 32, Bitmap.Config.ARGB_8888, 1));
+        // sampled decodes cannot reuse a bitmap before KitKat
+        Assert.assertNull(pool.get(64, 64, Bitmap.Config.ARGB_8888, 2));
+        Assert.assertSame(bitmap, pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void displayedHeldBackTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        // shown by two views
+        pool.markDisplayed(bitmap);
+        pool.markDisplayed(bitmap);
+        pool.put(bitmap);
+        Assert.assertEquals(0, pool.size());
+        Assert.assertNull(pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+        pool.markHidden(bitmap);
+        Assert.assertEquals(0, pool.size());
+        // the last view let go, the evicted bitmap is pooled now
+        pool.markHidden(bitmap);
+        Assert.assertEquals(64 * 64 * 4, pool.size());
+        Assert.assertSame(bitmap, pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void lookupHoldsAgainstEvictionTest() throws Exception {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        ShardedMemoryCache cache = new ShardedMemoryCache(1024, pool);
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        cache.put("a", new BitmapDrawable(null, bitmap));
+        Assert.assertNotNull(pool.getAndMarkDisplayed(cache, "a"));
+        // evicted after the lookup but before the view showed it
+        cache.clear();
+        Assert.assertNull(pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+        pool.markHidden(bitmap);
+        Assert.assertSame(bitmap, pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertNull(pool.getAndMarkDisplayed(cache, "a"));
+    }
+
+    @Test
+    public void countersTest() throws Exception {
+        BitmapPool pool = new BitmapPool(64 * 64 * 4);
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        // already pooled
+        pool.put(bitmap);
+        // over the budget on its own
+        pool.put(Bitmap.createBitmap(128, 128, Bitmap.Config.ARGB_8888));
+        Assert.assertNull(pool.get(128, 128, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertNotNull(pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertNull(pool.get(64, 64, Bitmap.Config.ARGB_8888, 1));
+        Assert.assertEquals(1, pool.putCount());
+        Assert.assertEquals(1, pool.hitCount());
+        Assert.assertEquals(2, pool.missCount());
+    }
+}
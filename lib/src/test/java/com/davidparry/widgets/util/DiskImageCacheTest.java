@@ -0,0 +1,84 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class DiskImageCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putGetTest() throws Exception {
+        DiskImageCache cache = new DiskImageCache(folder.getRoot(), 1024);
+        byte[] data = new byte[]{1, 2, 3, 4};
+        cache.put("http://www.davidparry.com/a.png", data);
+        Assert.assertTrue(Arrays.equals(data, cache.get("http://www.davidparry.com/a.png")));
+        Assert.assertNull(cache.get("http://www.davidparry.com/b.png"));
+        Assert.assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() throws Exception {
+        DiskImageCache cache = new DiskImageCache(folder.getRoot(), 20);
+        cache.put("a", new byte[8]);
+        cache.put("b", new byte[8]);
+        cache.get("a");
+        cache.put("c", new byte[8]);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(16, cache.size());
+    }
+
+    @Test
+    public void journalSurvivesReopenTest() throws Exception {
+        File dir = folder.getRoot();
+        DiskImageCache cache = new DiskImageCache(dir, 1024);
+        cache.put("a", new byte[]{9});
+        cache.put("b", new byte[]{8, 7});
+        // a stray temp file from a crashed write must not be picked up
+        new File(dir, "stray.tmp").createNewFile();
+
+        DiskImageCache reopened = new DiskImageCache(dir, 1024);
+        Assert.assertTrue(Arrays.equals(new byte[]{9}, reopened.get("a")));
+        Assert.assertEquals(3, reopened.size());
+        Assert.assertFalse(new File(dir, "stray.tmp").exists());
+    }
+
+    @Test
+    public void headersSurviveReopenTest() throws Exception {
+        File dir = folder.getRoot();
+        DiskImageCache cache = new DiskImageCache(dir, 1024);
+        cache.put("a", new byte[]{1, 2}, new CacheHeaders("\"abc 1\"", "Wed, 21 Oct 2015 07:28:00 GMT", 1000L));
+        cache.updateHeaders("a", new CacheHeaders("\"abc 2\"", null, 5000L));
+
+        DiskImageCache.Entry entry = new DiskImageCache(dir, 1024).getEntry("a");
+        Assert.assertTrue(Arrays.equals(new byte[]{1, 2}, entry.toByteArray()));
+        Assert.assertEquals("\"abc 2\"", entry.headers.getEtag());
+        Assert.assertNull(entry.headers.getLastModified());
+        Assert.assertEquals(5000L, entry.headers.getExpiresAt());
+        Assert.assertTrue(entry.headers.isFresh(4999L));
+        Assert.assertFalse(entry.headers.isFresh(5000L));
+    }
+}
@@ -0,0 +1,72 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class EncodedMemoryCacheTest {
+
+    @Test
+    public void putGetTest() throws Exception {
+        EncodedMemoryCache cache = new EncodedMemoryCache(1024);
+        byte[] data = new byte[]{1, 2, 3, 4};
+        cache.put("http://www.davidparry.com/a.png", data, null);
+        EncodedMemoryCache.Entry entry = cache.get("http://www.davidparry.com/a.png");
+        byte[] read = new byte[entry.data.remaining()];
+        entry.data.get(read);
+        Assert.assertTrue(Arrays.equals(data, read));
+        Assert.assertNull(entry.headers);
+        // each get has its own position and none can write to the bytes held
+        Assert.assertTrue(entry.data.isReadOnly());
+        Assert.assertEquals(4, cache.get("http://www.davidparry.com/a.png").data.remaining());
+        Assert.assertNull(cache.get("http://www.davidparry.com/b.png"));
+        Assert.assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() throws Exception {
+        EncodedMemoryCache cache = new EncodedMemoryCache(20, false);
+        cache.put("a", new byte[8], null);
+        cache.put("b", new byte[8], null);
+        cache.get("a");
+        cache.put("c", new byte[8], null);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        cache.put("d", new byte[21], null);
+        Assert.assertNull(cache.get("d"));
+        Assert.assertEquals(16, cache.size());
+    }
+
+    @Test
+    public void trimmedBudgetHoldsTest() throws Exception {
+        EncodedMemoryCache cache = new EncodedMemoryCache(32);
+        cache.put("a", new byte[16], null);
+        cache.put("b", new byte[16], null);
+        cache.trimToFraction(0.5f);
+        Assert.assertEquals(16, cache.size());
+        // puts after the trim stay within the lowered budget
+        cache.put("c", new byte[16], null);
+        Assert.assertEquals(16, cache.size());
+        Assert.assertNull(cache.get("b"));
+        cache.trimToFraction(1f);
+        cache.put("d", new byte[16], null);
+        Assert.assertEquals(32, cache.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JpegPreviewTest {
+    private static final byte[] THUMBNAIL = new byte[]{(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    @Test
+    public void exifThumbnailTest() throws Exception {
+        byte[] jpeg = jpeg(0xC0);
+        Assert.assertTrue(Arrays.equals(THUMBNAIL, JpegPreview.exifThumbnail(jpeg, jpeg.length)));
+    }
+
+    @Test
+    public void thumbnailNotArrivedTest() throws Exception {
+        byte[] jpeg = jpeg(0xC0);
+        // cut inside the thumbnail bytes
+        Assert.assertNull(JpegPreview.exifThumbnail(jpeg, 60));
+        Assert.assertNull(JpegPreview.exifThumbnail(new byte[]{(byte) 0x89, 'P', 'N', 'G'}, 4));
+    }
+
+    @Test
+    public void offsetPastIntRangeTest() throws Exception {
+        byte[] jpeg = jpeg(0xC0);
+        // the IFD1 offset at 22 and then the IFD0 offset at 16 made larger than an int can hold
+        jpeg[22] = (byte) 0x90;
+        Assert.assertNull(JpegPreview.exifThumbnail(jpeg, jpeg.length));
+        jpeg = jpeg(0xC0);
+        jpeg[16] = (byte) 0xF0;
+        Assert.assertNull(JpegPreview.exifThumbnail(jpeg, jpeg.length));
+    }
+
+    @Test
+    public void progressiveTest() throws Exception {
+        byte[] progressive = jpeg(0xC2);
+        byte[] baseline = jpeg(0xC0);
+        Assert.assertTrue(JpegPreview.isProgressive(progressive, progressive.length));
+        Assert.assertFalse(JpegPreview.isProgressive(baseline, baseline.length));
+    }
+
+    /**
+     * SOI, an exif APP1 whose IFD1 points at the thumbnail, then a frame header of the given type and SOS
+     */
+    private static byte[] jpeg(int sof) throws Exception {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.write(new byte[]{'M', 'M', 0, 42, 0, 0, 0, 8});
+        // IFD0 with no entries, next IFD right after it at 14
+        tiff.write(new byte[]{0, 0, 0, 0, 0, 14});
+        // IFD1 with the thumbnail offset and length, the thumbnail follows at 14 + 2 + 24 + 4 = 44
+        tiff.write(new byte[]{0, 2});
+        tiff.write(new byte[]{0x02, 0x01, 0, 4, 0, 0, 0, 1, 0, 0, 0, 44});
+        tiff.write(new byte[]{0x02, 0x02, 0, 4, 0, 0, 0, 1, 0, 0, 0, (byte) THUMBNAIL.length});
+        tiff.write(new byte[]{0, 0, 0, 0});
+        tiff.write(THUMBNAIL);
+        byte[] exif = tiff.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        int app1Length = 2 + 6 + exif.length;
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xE1, (byte) (app1Length >> 8), (byte) app1Length});
+        out.write(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        out.write(exif);
+        out.write(new byte[]{(byte) 0xFF, (byte) sof, 0, 2});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+        return out.toByteArray();
+    }
+}
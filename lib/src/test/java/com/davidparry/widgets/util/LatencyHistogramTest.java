@@ -0,0 +1,50 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesTest() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(1000000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100000000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(100000000, snapshot.getMaxNanos());
+        // bucket upper bounds, within a factor of two of the recorded values
+        long p50 = snapshot.getPercentileNanos(50);
+        Assert.assertTrue(p50 >= 1000000 && p50 < 2000000);
+        long p99 = snapshot.getPercentileNanos(99);
+        Assert.assertTrue(p99 >= 50000000 && p99 <= 100000000);
+    }
+
+    @Test
+    public void resetTest() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5000);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.snapshot().getCount());
+        Assert.assertEquals(0, histogram.snapshot().getPercentileNanos(50));
+    }
+}
@@ -0,0 +1,80 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NegativeCacheTest {
+    private static final String URL = "http://www.davidparry.com/storage/broken.png";
+
+    @Test
+    public void reasonForTest() {
+        Assert.assertEquals(NegativeCache.Reason.NOT_FOUND, NegativeCache.reasonFor(new HttpStatusException(404, "")));
+        Assert.assertEquals(NegativeCache.Reason.NOT_FOUND, NegativeCache.reasonFor(new HttpStatusException(410, "")));
+        Assert.assertEquals(NegativeCache.Reason.CLIENT_ERROR, NegativeCache.reasonFor(new HttpStatusException(403, "")));
+        Assert.assertEquals(NegativeCache.Reason.SERVER_ERROR, NegativeCache.reasonFor(new HttpStatusException(503, "")));
+        Assert.assertEquals(NegativeCache.Reason.SERVER_ERROR, NegativeCache.reasonFor(new HttpStatusException(429, "")));
+        Assert.assertEquals(NegativeCache.Reason.TIMEOUT, NegativeCache.reasonFor(new SocketTimeoutException()));
+        Assert.assertEquals(NegativeCache.Reason.NETWORK, NegativeCache.reasonFor(new IOException()));
+        Assert.assertNull(NegativeCache.reasonFor(new IllegalStateException()));
+    }
+
+    @Test
+    public void notFoundStaysForItsTtlTest() {
+        NegativeCache cache = new NegativeCache();
+        cache.setTtl(NegativeCache.Reason.NOT_FOUND, 1000L);
+        cache.recordFailure(URL, NegativeCache.Reason.NOT_FOUND, 0L);
+        Assert.assertNotNull(cache.getBlocking(URL, 999L));
+        Assert.assertNull(cache.getBlocking(URL, 1000L));
+        // a permanent reason does not back off
+        Assert.assertEquals(3000L, cache.recordFailure(URL, NegativeCache.Reason.NOT_FOUND, 2000L).getRetryAt());
+    }
+
+    @Test
+    public void transientBacksOffTest() {
+        NegativeCache cache = new NegativeCache();
+        cache.setTtl(NegativeCache.Reason.TIMEOUT, 1000L);
+        Assert.assertEquals(1000L, cache.recordFailure(URL, NegativeCache.Reason.TIMEOUT, 0L).getRetryAt());
+        Assert.assertEquals(3000L, cache.recordFailure(URL, NegativeCache.Reason.TIMEOUT, 1000L).getRetryAt());
+        NegativeCache.Failure third = cache.recordFailure(URL, NegativeCache.Reason.SERVER_ERROR, 3000L);
+        Assert.assertEquals(3, third.getCount());
+        Assert.assertEquals(3000L + 4 * 5000L, third.getRetryAt());
+        for (int i = 0; i < 40; i++) {
+            third = cache.recordFailure(URL, NegativeCache.Reason.TIMEOUT, 0L);
+        }
+        Assert.assertEquals(5 * 60 * 1000L, third.getRetryAt());
+
+        // loading once starts the next failure from the first ttl again
+        cache.clear(URL);
+        Assert.assertEquals(1000L, cache.recordFailure(URL, NegativeCache.Reason.TIMEOUT, 0L).getRetryAt());
+    }
+
+    @Test
+    public void boundedTest() {
+        NegativeCache cache = new NegativeCache(2);
+        cache.recordFailure("a", NegativeCache.Reason.NOT_FOUND, 0L);
+        cache.recordFailure("b", NegativeCache.Reason.NOT_FOUND, 0L);
+        cache.getBlocking("a", 1L);
+        cache.recordFailure("c", NegativeCache.Reason.NOT_FOUND, 0L);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.getBlocking("a", 1L));
+        Assert.assertNull(cache.getBlocking("b", 1L));
+    }
+}
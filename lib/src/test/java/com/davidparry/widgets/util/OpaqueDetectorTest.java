@@ -0,0 +1,77 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class OpaqueDetectorTest {
+
+    @Test
+    public void jpegTest() throws Exception {
+        byte[] jpeg = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16};
+        Assert.assertTrue(OpaqueDetector.isOpaque(jpeg, null));
+    }
+
+    @Test
+    public void pngTest() throws Exception {
+        Assert.assertTrue(OpaqueDetector.isOpaque(png(2, false), "image/png"));
+        Assert.assertFalse(OpaqueDetector.isOpaque(png(6, false), "image/png"));
+        Assert.assertTrue(OpaqueDetector.isOpaque(png(3, false), "image/png"));
+        Assert.assertFalse(OpaqueDetector.isOpaque(png(3, true), "image/png"));
+    }
+
+    @Test
+    public void bogusChunkLengthTest() throws Exception {
+        byte[] png = png(2, false);
+        // IHDR claims 0xFFFFFFF0 bytes, past the end and past what an int position can add
+        png[8] = (byte) 0xFF;
+        png[9] = (byte) 0xFF;
+        png[10] = (byte) 0xFF;
+        png[11] = (byte) 0xF0;
+        Assert.assertFalse(OpaqueDetector.isOpaque(png, "image/png"));
+    }
+
+    @Test
+    public void unknownFormatTest() throws Exception {
+        byte[] gif = new byte[]{'G', 'I', 'F', '8', '9', 'a'};
+        Assert.assertFalse(OpaqueDetector.isOpaque(gif, "image/jpeg"));
+        byte[] unknown = new byte[]{1, 2, 3, 4, 5};
+        Assert.assertTrue(OpaqueDetector.isOpaque(unknown, "image/jpeg; charset=binary"));
+        Assert.assertFalse(OpaqueDetector.isOpaque(unknown, null));
+    }
+
+    private static byte[] png(int colorType, boolean transparency) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', 13, 10, 26, 10});
+        chunk(out, "IHDR", new byte[]{0, 0, 0, 8, 0, 0, 0, 8, 8, (byte) colorType, 0, 0, 0});
+        if (transparency) {
+            chunk(out, "tRNS", new byte[]{0});
+        }
+        chunk(out, "IDAT", new byte[]{0, 0});
+        return out.toByteArray();
+    }
+
+    private static void chunk(ByteArrayOutputStream out, String type, byte[] data) throws Exception {
+        out.write(new byte[]{0, 0, 0, (byte) data.length});
+        out.write(type.getBytes("US-ASCII"));
+        out.write(data);
+        // crc is not checked
+        out.write(new byte[4]);
+    }
+}
@@ -0,0 +1,138 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class PackFileStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putGetTest() throws Exception {
+        PackFileStore store = new PackFileStore(folder.getRoot(), 1024, 256);
+        byte[] data = new byte[]{1, 2, 3, 4};
+        store.put("http://www.davidparry.com/a.png", data, null);
+        ImageStore.Entry entry = store.getEntry("http://www.davidparry.com/a.png");
+        Assert.assertTrue(entry.isMapped());
+        Assert.assertTrue(Arrays.equals(data, entry.toByteArray()));
+        Assert.assertNull(entry.headers);
+        Assert.assertNull(store.getEntry("http://www.davidparry.com/b.png"));
+        Assert.assertEquals(4, store.size());
+    }
+
+    @Test
+    public void survivesReopenTest() throws Exception {
+        File dir = folder.getRoot();
+        PackFileStore store = new PackFileStore(dir, 1024, 256);
+        store.put("a", new byte[]{9}, new CacheHeaders("\"abc\"", null, 5000L));
+        store.put("b", new byte[]{8, 7}, null);
+        store.put("c", new byte[]{6}, null);
+        store.remove("c");
+        store.updateHeaders("b", new CacheHeaders(null, "Wed, 21 Oct 2015 07:28:00 GMT", 7000L));
+
+        PackFileStore reopened = new PackFileStore(dir, 1024, 256);
+        ImageStore.Entry a = reopened.getEntry("a");
+        Assert.assertTrue(Arrays.equals(new byte[]{9}, a.toByteArray()));
+        Assert.assertEquals("\"abc\"", a.headers.getEtag());
+        Assert.assertNull(a.headers.getLastModified());
+        Assert.assertTrue(reopened.isFresh("a", 4999L));
+        Assert.assertFalse(reopened.isFresh("a", 5000L));
+        ImageStore.Entry b = reopened.getEntry("b");
+        Assert.assertTrue(Arrays.equals(new byte[]{8, 7}, b.toByteArray()));
+        Assert.assertEquals(7000L, b.headers.getExpiresAt());
+        Assert.assertNull(reopened.getEntry("c"));
+        Assert.assertEquals(3, reopened.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() throws Exception {
+        PackFileStore store = new PackFileStore(folder.getRoot(), 20, 256);
+        store.put("a", new byte[8], null);
+        store.put("b", new byte[8], null);
+        store.getEntry("a");
+        store.put("c", new byte[8], null);
+        Assert.assertNotNull(store.getEntry("a"));
+        Assert.assertNull(store.getEntry("b"));
+        Assert.assertNotNull(store.getEntry("c"));
+        Assert.assertEquals(16, store.size());
+    }
+
+    @Test
+    public void compactsIntoFewerSegmentsTest() throws Exception {
+        File dir = folder.getRoot();
+        PackFileStore store = new PackFileStore(dir, 64, 128);
+        ImageStore.Entry kept = null;
+        for (int i = 0; i < 40; i++) {
+            byte[] data = new byte[16];
+            Arrays.fill(data, (byte) i);
+            store.put("id" + i, data, null);
+            if (i == 36) {
+                kept = store.getEntry("id36");
+            }
+        }
+        // overwritten and evicted records are reclaimed as the store goes
+        Assert.assertTrue(store.packedSize() < 4 * 128);
+        Assert.assertTrue(store.segmentCount() <= 4);
+        Assert.assertEquals(64, store.size());
+        // bytes handed out before a compaction stay readable
+        Assert.assertEquals(36, kept.toByteArray()[0]);
+
+        PackFileStore reopened = new PackFileStore(dir, 64, 128);
+        Assert.assertNull(reopened.getEntry("id35"));
+        for (int i = 36; i < 40; i++) {
+            Assert.assertEquals(i, reopened.getEntry("id" + i).toByteArray()[15]);
+        }
+    }
+
+    @Test
+    public void tornRecordEndsSegmentTest() throws Exception {
+        File dir = folder.getRoot();
+        PackFileStore store = new PackFileStore(dir, 1024, 256);
+        store.put("a", new byte[]{1}, null);
+        store.put("b", new byte[]{2}, null);
+        long packed = store.packedSize();
+
+        // a crash between writing the body and the magic of the next record
+        RandomAccessFile file = new RandomAccessFile(new File(dir, "segment-0.pack"), "rw");
+        file.seek(packed + 4);
+        file.writeInt(40);
+        file.close();
+
+        PackFileStore reopened = new PackFileStore(dir, 1024, 256);
+        Assert.assertNotNull(reopened.getEntry("a"));
+        Assert.assertNotNull(reopened.getEntry("b"));
+        Assert.assertEquals(packed, reopened.packedSize());
+        reopened.put("c", new byte[]{3}, null);
+        Assert.assertEquals(3, new PackFileStore(dir, 1024, 256).getEntry("c").toByteArray()[0]);
+    }
+
+    @Test
+    public void rejectsImagesLargerThanASegmentTest() throws Exception {
+        PackFileStore store = new PackFileStore(folder.getRoot(), 4096, 256);
+        store.put("big", new byte[512], null);
+        Assert.assertNull(store.getEntry("big"));
+        Assert.assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,41 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TiledDrawableTest {
+
+    @Test
+    public void sampleNeverCoarserThanScreenTest() throws Exception {
+        Assert.assertEquals(1, TiledDrawable.sampleFor(0.25f));
+        Assert.assertEquals(1, TiledDrawable.sampleFor(1f));
+        Assert.assertEquals(1, TiledDrawable.sampleFor(1.9f));
+        Assert.assertEquals(2, TiledDrawable.sampleFor(2f));
+        Assert.assertEquals(4, TiledDrawable.sampleFor(7.5f));
+        Assert.assertEquals(16, TiledDrawable.sampleFor(16f));
+    }
+
+    @Test
+    public void tileKeysDifferBySampleAndPositionTest() throws Exception {
+        String key = "http://maps/large.jpg@400x300#tiles";
+        Assert.assertFalse(TiledDrawable.tileKey(key, 1, 2, 3).equals(TiledDrawable.tileKey(key, 2, 2, 3)));
+        Assert.assertFalse(TiledDrawable.tileKey(key, 1, 2, 3).equals(TiledDrawable.tileKey(key, 1, 3, 2)));
+        Assert.assertFalse(TiledDrawable.tileKey(key, 1, 12, 3).equals(TiledDrawable.tileKey(key, 1, 1, 23)));
+        Assert.assertTrue(TiledDrawable.tileKey(key, 4, 0, 0).startsWith(key));
+    }
+}
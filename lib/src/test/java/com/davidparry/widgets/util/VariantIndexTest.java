@@ -0,0 +1,54 @@
+package com.davidparry.widgets.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright 2015 David Parry
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class VariantIndexTest {
+    private static final String URL = "http://www.davidparry.com/storage/image.png";
+
+    @Test
+    public void findsSmallestCoveringVariantTest() throws Exception {
+        VariantIndex index = new VariantIndex();
+        index.add(VariantIndex.idFor(URL, 1080, 1920));
+        index.add(VariantIndex.idFor(URL, 400, 400));
+        index.add(VariantIndex.idFor(URL, 64, 64));
+        Assert.assertEquals(VariantIndex.idFor(URL, 400, 400), index.findLarger(VariantIndex.idFor(URL, 96, 96)));
+        Assert.assertEquals(VariantIndex.idFor(URL, 1080, 1920), index.findLarger(VariantIndex.idFor(URL, 400, 800)));
+        Assert.assertNull(index.findLarger(VariantIndex.idFor(URL, 2000, 100)));
+        Assert.assertNull(index.findLarger(VariantIndex.idFor("http://www.davidparry.com/other.png", 32, 32)));
+    }
+
+    @Test
+    public void unboundedSideTest() throws Exception {
+        VariantIndex index = new VariantIndex();
+        index.add(VariantIndex.idFor(URL, 0, 0));
+        index.add(VariantIndex.idFor(URL, 200, 0));
+        Assert.assertEquals(VariantIndex.idFor(URL, 200, 0), index.findLarger(VariantIndex.idFor(URL, 100, 100)));
+        Assert.assertEquals(VariantIndex.idFor(URL, 200, 0), index.findLarger(VariantIndex.idFor(URL, 100, 0)));
+        Assert.assertEquals(VariantIndex.idFor(URL, 0, 0), index.findLarger(VariantIndex.idFor(URL, 300, 0)));
+    }
+
+    @Test
+    public void removeTest() throws Exception {
+        VariantIndex index = new VariantIndex();
+        index.add(VariantIndex.idFor(URL, 400, 400));
+        index.add("not a sized id");
+        index.remove(VariantIndex.idFor(URL, 400, 400));
+        Assert.assertNull(index.findLarger(VariantIndex.idFor(URL, 96, 96)));
+    }
+}